@@ -103,6 +103,8 @@ CREATE TABLE orders (
   quantity DECIMAL(36,18) NOT NULL,
   sequenceId BIGINT NOT NULL,
   status VARCHAR(32) NOT NULL,
+  timeInForce VARCHAR(32) NOT NULL,
+  type VARCHAR(32) NOT NULL,
   unfilledQuantity DECIMAL(36,18) NOT NULL,
   updatedAt BIGINT NOT NULL,
   userId BIGINT NOT NULL,
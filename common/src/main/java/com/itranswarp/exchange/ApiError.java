@@ -14,6 +14,8 @@ public enum ApiError {
 
     ORDER_NOT_FOUND,
 
+    TOO_MANY_OPEN_ORDERS,
+
     OPERATION_TIMEOUT,
 
     INTERNAL_SERVER_ERROR;
@@ -0,0 +1,19 @@
+package com.itranswarp.exchange.bean;
+
+import java.math.BigDecimal;
+
+/**
+ * Available and frozen balance of an asset, same JSON as the Asset of trading engine.
+ */
+public class AssetBean {
+    public BigDecimal available;
+    public BigDecimal frozen;
+
+    public AssetBean() {
+    }
+
+    public AssetBean(BigDecimal available, BigDecimal frozen) {
+        this.available = available;
+        this.frozen = frozen;
+    }
+}
@@ -0,0 +1,129 @@
+package com.itranswarp.exchange.bean;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Verify secure string created by AuthToken.toSecureString().
+ *
+ * Each thread reuses its own Mac, and verified tokens are cached until expiresAt. Thread-safe.
+ */
+public class AuthTokenVerifier {
+
+    static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    final int maxCacheSize;
+
+    final ThreadLocal<Mac> macs;
+
+    final Map<String, AuthToken> cache = new ConcurrentHashMap<>();
+
+    public AuthTokenVerifier(String hmacKey) {
+        this(hmacKey, 100000);
+    }
+
+    public AuthTokenVerifier(String hmacKey, int maxCacheSize) {
+        SecretKeySpec key = new SecretKeySpec(hmacKey.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.maxCacheSize = maxCacheSize;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Same as AuthToken.fromSecureString(b64token, hmacKey).
+     *
+     * @throws IllegalArgumentException If token is invalid.
+     */
+    public AuthToken verify(String b64token) {
+        AuthToken token = this.cache.get(b64token);
+        if (token != null) {
+            if (!token.isExpired()) {
+                return token;
+            }
+            this.cache.remove(b64token);
+        }
+        token = parse(b64token);
+        if (!token.isExpired()) {
+            if (this.cache.size() >= this.maxCacheSize) {
+                evict();
+            }
+            this.cache.put(b64token, token);
+        }
+        return token;
+    }
+
+    AuthToken parse(String b64token) {
+        // token = userId : expiresAt : hex(hmacSha256(userId : expiresAt)):
+        byte[] token = Base64.getUrlDecoder().decode(b64token);
+        int n1 = indexOf(token, 0);
+        int n2 = n1 < 0 ? -1 : indexOf(token, n1 + 1);
+        if (n2 < 0 || token.length - n2 - 1 != 64) {
+            throw new IllegalArgumentException("Invalid token.");
+        }
+        Mac mac = this.macs.get();
+        mac.update(token, 0, n2);
+        byte[] sig = mac.doFinal();
+        // 比较时间与签名内容无关:
+        int diff = 0;
+        for (int i = 0, p = n2 + 1; i < sig.length; i++, p += 2) {
+            diff |= token[p] ^ HEX[(sig[i] >> 4) & 0xf];
+            diff |= token[p + 1] ^ HEX[sig[i] & 0xf];
+        }
+        if (diff != 0) {
+            throw new IllegalArgumentException("Invalid token.");
+        }
+        return new AuthToken(parseLong(token, 0, n1), parseLong(token, n1 + 1, n2));
+    }
+
+    void evict() {
+        // 先移除过期的token, 仍然过多时全部清除:
+        long now = System.currentTimeMillis();
+        Iterator<AuthToken> it = this.cache.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt() < now) {
+                it.remove();
+            }
+        }
+        if (this.cache.size() >= this.maxCacheSize) {
+            this.cache.clear();
+        }
+    }
+
+    static int indexOf(byte[] bs, int from) {
+        for (int i = from; i < bs.length; i++) {
+            if (bs[i] == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static long parseLong(byte[] bs, int from, int to) {
+        if (from >= to || to - from > 18) {
+            throw new IllegalArgumentException("Invalid token.");
+        }
+        long n = 0;
+        for (int i = from; i < to; i++) {
+            int d = bs[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new IllegalArgumentException("Invalid token.");
+            }
+            n = n * 10 + d;
+        }
+        return n;
+    }
+}
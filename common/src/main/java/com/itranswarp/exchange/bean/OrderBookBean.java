@@ -1,6 +1,5 @@
 package com.itranswarp.exchange.bean;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.itranswarp.exchange.util.JsonUtil;
 
 import java.math.BigDecimal;
@@ -8,11 +7,17 @@ import java.util.List;
 
 public class OrderBookBean {
     public static final String EMPTY= JsonUtil.writeJson(new OrderBookBean(0, BigDecimal.ZERO, List.of(),List.of()));
-    @JsonIgnore
+    /**
+     * Sequence id of the last event applied to this snapshot, used as version.
+     */
     public long sequenceId;
     public BigDecimal price;
     public List<OrderBookItemBean> buy;
     public List<OrderBookItemBean> sell;
+
+    public OrderBookBean() {
+    }
+
     public OrderBookBean (long sequenceId, BigDecimal price,List<OrderBookItemBean> buy, List<OrderBookItemBean> sell){
         this.sequenceId=sequenceId;
         this.price=price;
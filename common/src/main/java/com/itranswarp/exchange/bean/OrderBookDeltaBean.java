@@ -0,0 +1,64 @@
+package com.itranswarp.exchange.bean;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changed price levels between two order book snapshots.
+ *
+ * Each item holds the new total quantity of a level, and quantity 0 means the level was removed.
+ */
+public class OrderBookDeltaBean {
+
+    public long sequenceId;
+
+    /**
+     * The sequence id of the snapshot this delta applies to.
+     */
+    public long previousSequenceId;
+
+    public BigDecimal price;
+
+    public List<OrderBookItemBean> buy;
+
+    public List<OrderBookItemBean> sell;
+
+    public OrderBookDeltaBean() {
+    }
+
+    public OrderBookDeltaBean(long sequenceId, long previousSequenceId, BigDecimal price, List<OrderBookItemBean> buy,
+            List<OrderBookItemBean> sell) {
+        this.sequenceId = sequenceId;
+        this.previousSequenceId = previousSequenceId;
+        this.price = price;
+        this.buy = buy;
+        this.sell = sell;
+    }
+
+    public static OrderBookDeltaBean diff(OrderBookBean from, OrderBookBean to) {
+        return new OrderBookDeltaBean(to.sequenceId, from.sequenceId, to.price, diff(from.buy, to.buy),
+                diff(from.sell, to.sell));
+    }
+
+    static List<OrderBookItemBean> diff(List<OrderBookItemBean> from, List<OrderBookItemBean> to) {
+        Map<BigDecimal, BigDecimal> fromLevels = new HashMap<>(from.size() * 2);
+        for (OrderBookItemBean item : from) {
+            fromLevels.put(item.price.stripTrailingZeros(), item.quantity);
+        }
+        List<OrderBookItemBean> changes = new ArrayList<>();
+        for (OrderBookItemBean item : to) {
+            BigDecimal quantity = fromLevels.remove(item.price.stripTrailingZeros());
+            if (quantity == null || quantity.compareTo(item.quantity) != 0) {
+                changes.add(item);
+            }
+        }
+        // 剩余的价格档位已被移除:
+        for (BigDecimal price : fromLevels.keySet()) {
+            changes.add(new OrderBookItemBean(price, BigDecimal.ZERO));
+        }
+        return changes;
+    }
+}
@@ -5,6 +5,10 @@ import java.math.BigDecimal;
 public class OrderBookItemBean {
     public BigDecimal price;
     public BigDecimal quantity;
+
+    public OrderBookItemBean() {
+    }
+
     public OrderBookItemBean(BigDecimal price,BigDecimal quantity){
         this.price=price;
         this.quantity=quantity;
@@ -0,0 +1,39 @@
+package com.itranswarp.exchange.bean;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.itranswarp.exchange.ApiError;
+import com.itranswarp.exchange.ApiException;
+import com.itranswarp.exchange.enums.Direction;
+
+/**
+ * Cancel active orders of current user. All fields are optional.
+ */
+public class OrderMassCancelBean implements ValidatableBean {
+
+    public Direction direction;
+
+    public BigDecimal minPrice;
+
+    public BigDecimal maxPrice;
+
+    @Override
+    public void validate() {
+        if (this.minPrice != null) {
+            this.minPrice = this.minPrice.setScale(2, RoundingMode.DOWN);
+            if (this.minPrice.signum() < 0) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "minPrice", "minPrice must not be negative.");
+            }
+        }
+        if (this.maxPrice != null) {
+            this.maxPrice = this.maxPrice.setScale(2, RoundingMode.DOWN);
+            if (this.maxPrice.signum() < 0) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "maxPrice", "maxPrice must not be negative.");
+            }
+        }
+        if (this.minPrice != null && this.maxPrice != null && this.minPrice.compareTo(this.maxPrice) > 0) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "maxPrice", "maxPrice must not be less than minPrice.");
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.math.RoundingMode;
 import com.itranswarp.exchange.ApiError;
 import com.itranswarp.exchange.ApiException;
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 
 public class OrderRequestBean implements ValidatableBean {
 
@@ -15,18 +17,47 @@ public class OrderRequestBean implements ValidatableBean {
 
     public BigDecimal quantity;
 
+    /**
+     * Default to LIMIT.
+     */
+    public OrderType type;
+
+    /**
+     * Default to GTC for limit order and IOC for market order.
+     */
+    public TimeInForce timeInForce;
+
     @Override
     public void validate() {
         if (this.direction == null) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "direction", "direction is required.");
         }
+        // type and time in force:
+        if (this.type == null) {
+            this.type = OrderType.LIMIT;
+        }
+        if (this.timeInForce == null) {
+            this.timeInForce = this.type == OrderType.MARKET ? TimeInForce.IOC : TimeInForce.GTC;
+        }
+        if (this.type == OrderType.MARKET && !this.timeInForce.isImmediate) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "timeInForce", "market order must be IOC or FOK.");
+        }
         // price:
         if (this.price == null) {
-            throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price is required.");
-        }
-        this.price = this.price.setScale(2, RoundingMode.DOWN);
-        if (this.price.signum() <= 0) {
-            throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price must be positive.");
+            // 市价卖单可不指定价格, 按任意买价成交:
+            if (this.type == OrderType.MARKET && this.direction == Direction.SELL) {
+                this.price = BigDecimal.ZERO.setScale(2);
+            } else if (this.type == OrderType.MARKET) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "price",
+                        "price is required as the highest price of market buy order.");
+            } else {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price is required.");
+            }
+        } else {
+            this.price = this.price.setScale(2, RoundingMode.DOWN);
+            if (this.price.signum() <= 0) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price must be positive.");
+            }
         }
         // quantity:
         if (this.quantity == null) {
@@ -0,0 +1,20 @@
+package com.itranswarp.exchange.bean;
+
+import com.itranswarp.exchange.ApiErrorResponse;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * Result of one order in a batch: either the created order or the error.
+ */
+public class OrderResultBean {
+    public OrderEntity order;
+    public ApiErrorResponse error;
+
+    public OrderResultBean() {
+    }
+
+    public OrderResultBean(OrderEntity order, ApiErrorResponse error) {
+        this.order = order;
+        this.error = error;
+    }
+}
@@ -0,0 +1,37 @@
+package com.itranswarp.exchange.bean;
+
+import java.math.BigDecimal;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
+import com.itranswarp.exchange.enums.TriggerType;
+
+/**
+ * A pending trigger order kept by trading engine. Assets are frozen only when it is triggered, and the created order
+ * uses the same id.
+ */
+public class TriggerOrderBean {
+    public Long id;
+    public long sequenceId;
+    public Long userId;
+    public TriggerType triggerType;
+    public BigDecimal triggerPrice;
+    public Direction direction;
+    public BigDecimal price;
+    public BigDecimal quantity;
+    public OrderType type;
+    public TimeInForce timeInForce;
+    // PENDING或FULLY_CANCELLED:
+    public OrderStatus status;
+    public long createdAt;
+
+    @Override
+    public String toString() {
+        return "TriggerOrderBean [id=" + id + ", sequenceId=" + sequenceId + ", userId=" + userId + ", triggerType="
+                + triggerType + ", triggerPrice=" + triggerPrice + ", direction=" + direction + ", price=" + price
+                + ", quantity=" + quantity + ", type=" + type + ", timeInForce=" + timeInForce + ", status="
+                + status + "]";
+    }
+}
@@ -0,0 +1,33 @@
+package com.itranswarp.exchange.bean;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.itranswarp.exchange.ApiError;
+import com.itranswarp.exchange.ApiException;
+import com.itranswarp.exchange.enums.TriggerType;
+
+/**
+ * Order placed by trading engine when market price reaches triggerPrice.
+ */
+public class TriggerOrderRequestBean extends OrderRequestBean {
+
+    public TriggerType triggerType;
+
+    public BigDecimal triggerPrice;
+
+    @Override
+    public void validate() {
+        super.validate();
+        if (this.triggerType == null) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "triggerType", "triggerType is required.");
+        }
+        if (this.triggerPrice == null) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "triggerPrice", "triggerPrice is required.");
+        }
+        this.triggerPrice = this.triggerPrice.setScale(2, RoundingMode.DOWN);
+        if (this.triggerPrice.signum() <= 0) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "triggerPrice", "triggerPrice must be positive.");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.itranswarp.exchange.bean;
+
+import java.util.List;
+import java.util.Map;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * Orders and trigger orders changed by one event batch and the assets of the user after the batch. A trigger order
+ * rejected when triggered is included with status FULLY_CANCELLED.
+ */
+public class UserUpdateBean {
+    public List<OrderEntity> orders;
+    public List<TriggerOrderBean> triggers;
+    public Map<AssetEnum, AssetBean> assets;
+
+    public UserUpdateBean() {
+    }
+
+    public UserUpdateBean(List<OrderEntity> orders, List<TriggerOrderBean> triggers, Map<AssetEnum, AssetBean> assets) {
+        this.orders = orders;
+        this.triggers = triggers;
+        this.assets = assets;
+    }
+}
@@ -0,0 +1,8 @@
+package com.itranswarp.exchange.enums;
+
+public enum OrderType {
+    //限价单, 按价格或更优价格成交
+    LIMIT,
+    //市价单, 立即按对手盘价格成交, 未成交部分取消, 不进入订单簿
+    MARKET;
+}
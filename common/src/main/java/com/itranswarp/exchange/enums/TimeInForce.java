@@ -0,0 +1,19 @@
+package com.itranswarp.exchange.enums;
+
+public enum TimeInForce {
+    //未成交部分进入订单簿直到成交或取消
+    GTC(false),
+    //立即成交, 未成交部分取消
+    IOC(true),
+    //全部立即成交, 否则整单取消且不与任何订单成交
+    FOK(true),
+    //只做Maker, 会立即成交时整单取消
+    POST_ONLY(false);
+
+    // 未成交部分是否直接取消而不进入订单簿:
+    public final boolean isImmediate;
+
+    TimeInForce(boolean isImmediate){
+        this.isImmediate=isImmediate;
+    }
+}
@@ -0,0 +1,15 @@
+package com.itranswarp.exchange.enums;
+
+public enum TriggerType {
+    //止损: 卖单在市场价下跌至触发价时触发, 买单在市场价上涨至触发价时触发
+    STOP_LOSS,
+    //止盈: 卖单在市场价上涨至触发价时触发, 买单在市场价下跌至触发价时触发
+    TAKE_PROFIT;
+
+    /**
+     * Return true if triggered when market price rises to trigger price, false if falls to trigger price.
+     */
+    public boolean isAbove(Direction direction){
+        return (this == STOP_LOSS) == (direction == Direction.BUY);
+    }
+}
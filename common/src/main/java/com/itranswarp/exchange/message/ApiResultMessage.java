@@ -2,7 +2,13 @@ package com.itranswarp.exchange.message;
 
 import com.itranswarp.exchange.ApiError;
 import com.itranswarp.exchange.ApiErrorResponse;
+import com.itranswarp.exchange.bean.OrderResultBean;
+import com.itranswarp.exchange.bean.TriggerOrderBean;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.util.IdUtil;
+
+import java.util.List;
 
 /**
  * API result message.
@@ -19,6 +25,30 @@ public class ApiResultMessage extends AbstractMessage {
     private static ApiErrorResponse CANCEL_ORDER_FAILED = new ApiErrorResponse(ApiError.ORDER_NOT_FOUND, null,
             "Order not found..");
 
+    private static ApiErrorResponse TOO_MANY_OPEN_ORDERS = new ApiErrorResponse(ApiError.TOO_MANY_OPEN_ORDERS, null,
+            "Too many open orders");
+
+    private static ApiErrorResponse BATCH_INVALID = new ApiErrorResponse(ApiError.PARAMETER_INVALID, "orders",
+            "Invalid order batch");
+
+    /**
+     * Create refId as "nodeId:uniqueId" so the result can be routed back to the API node waiting for it.
+     */
+    public static String createRefId(String nodeId) {
+        return nodeId + ":" + IdUtil.generateUniqueId();
+    }
+
+    /**
+     * Get the topic to publish the result with given refId.
+     */
+    public static String topicOf(String refId) {
+        int pos = refId.indexOf(':');
+        if (pos == -1) {
+            return RedisCache.Topic.TRADING_API_RESULT;
+        }
+        return RedisCache.Topic.tradingApiResult(refId.substring(0, pos));
+    }
+
     public static ApiResultMessage createOrderFailed(String refId, long ts) {
         ApiResultMessage msg = new ApiResultMessage();
         msg.error = CREATE_ORDER_FAILED;
@@ -35,6 +65,52 @@ public class ApiResultMessage extends AbstractMessage {
         return msg;
     }
 
+    public static ApiResultMessage tooManyOpenOrders(String refId, long ts) {
+        ApiResultMessage msg = new ApiResultMessage();
+        msg.error = TOO_MANY_OPEN_ORDERS;
+        msg.refId = refId;
+        msg.createdAt = ts;
+        return msg;
+    }
+
+    public static ApiResultMessage batchInvalid(String refId, long ts) {
+        ApiResultMessage msg = new ApiResultMessage();
+        msg.error = BATCH_INVALID;
+        msg.refId = refId;
+        msg.createdAt = ts;
+        return msg;
+    }
+
+    /**
+     * Result of order batch is the list of OrderResultBean in the same order of request.
+     */
+    public static ApiResultMessage batchSuccess(String refId, List<OrderResultBean> results, long ts) {
+        ApiResultMessage msg = new ApiResultMessage();
+        msg.result = results;
+        msg.refId = refId;
+        msg.createdAt = ts;
+        return msg;
+    }
+
+    /**
+     * Result of mass cancel is the list of canceled orders.
+     */
+    public static ApiResultMessage massCancelSuccess(String refId, List<OrderEntity> orders, long ts) {
+        ApiResultMessage msg = new ApiResultMessage();
+        msg.result = orders;
+        msg.refId = refId;
+        msg.createdAt = ts;
+        return msg;
+    }
+
+    public static ApiResultMessage triggerOrderSuccess(String refId, TriggerOrderBean trigger, long ts) {
+        ApiResultMessage msg = new ApiResultMessage();
+        msg.result = trigger;
+        msg.refId = refId;
+        msg.createdAt = ts;
+        return msg;
+    }
+
     public static ApiResultMessage orderSuccess(String refId, OrderEntity order, long ts) {
         ApiResultMessage msg = new ApiResultMessage();
         msg.result = order;
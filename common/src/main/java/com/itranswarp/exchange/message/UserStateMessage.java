@@ -0,0 +1,31 @@
+package com.itranswarp.exchange.message;
+
+import java.util.List;
+import java.util.Map;
+
+import com.itranswarp.exchange.bean.AssetBean;
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * Full assets, open orders and pending trigger orders of a user after the events up to sequenceId were processed.
+ */
+public class UserStateMessage extends AbstractMessage {
+
+    public long sequenceId;
+
+    /**
+     * sequenceId of the previous USER_STATE message, so a subscriber can detect a missed message.
+     */
+    public long previousSequenceId;
+
+    public Long userId;
+
+    public Map<AssetEnum, AssetBean> assets;
+
+    public List<OrderEntity> orders;
+
+    public List<TriggerOrderBean> triggers;
+
+}
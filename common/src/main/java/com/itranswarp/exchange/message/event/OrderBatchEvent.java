@@ -0,0 +1,47 @@
+package com.itranswarp.exchange.message.event;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Create several orders of one user in one sequenced event. Orders are processed in list order and each gets its own
+ * order id and result.
+ */
+public class OrderBatchEvent extends AbstractEvent{
+    /**
+     * Max orders in one event, also bounds the order id offset within the event.
+     */
+    public static final int MAX_ORDERS = 100;
+
+    public Long userId;
+
+    public List<Item> orders;
+
+    public static class Item {
+        public Direction direction;
+
+        public BigDecimal price;
+
+        public BigDecimal quantity;
+
+        public OrderType type;
+
+        public TimeInForce timeInForce;
+
+        @Override
+        public String toString(){
+            return "Item [direction=" + direction + ", price=" + price + ", quantity=" + quantity + ", type=" + type
+                    + ", timeInForce=" + timeInForce + "]";
+        }
+    }
+
+    @Override
+    public String toString(){
+        return "OrderBatchEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
+                + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", orders=" + orders + "]";
+    }
+}
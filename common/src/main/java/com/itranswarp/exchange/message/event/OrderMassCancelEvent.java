@@ -0,0 +1,37 @@
+package com.itranswarp.exchange.message.event;
+
+import com.itranswarp.exchange.enums.Direction;
+
+import java.math.BigDecimal;
+
+/**
+ * Cancel all active orders of a user in one sequenced event, optionally limited to one side and a price range.
+ */
+public class OrderMassCancelEvent extends AbstractEvent{
+    public Long userId;
+
+    /**
+     * Cancel orders of this direction only, or null for both.
+     */
+    public Direction direction;
+
+    /**
+     * Inclusive price bounds, or null for no bound.
+     */
+    public BigDecimal minPrice;
+
+    public BigDecimal maxPrice;
+
+    public boolean matches(Direction orderDirection, BigDecimal price){
+        return (this.direction == null || this.direction == orderDirection)
+                && (this.minPrice == null || price.compareTo(this.minPrice) >= 0)
+                && (this.maxPrice == null || price.compareTo(this.maxPrice) <= 0);
+    }
+
+    @Override
+    public String toString(){
+        return "OrderMassCancelEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId="
+                + uniqueId + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", direction="
+                + direction + ", minPrice=" + minPrice + ", maxPrice=" + maxPrice + "]";
+    }
+}
@@ -1,6 +1,8 @@
 package com.itranswarp.exchange.message.event;
 
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 
 import java.math.BigDecimal;
 
@@ -13,10 +15,21 @@ public class OrderRequestEvent extends AbstractEvent{
 
     public BigDecimal quantity;
 
+    /**
+     * Null for LIMIT, as events created before order types.
+     */
+    public OrderType type;
+
+    /**
+     * Null for GTC.
+     */
+    public TimeInForce timeInForce;
+
     @Override
     public String toString() {
         return "OrderRequestEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
                 + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", direction=" + direction
-                + ", price=" + price + ", quantity=" + quantity + "]";
+                + ", price=" + price + ", quantity=" + quantity + ", type=" + type + ", timeInForce=" + timeInForce
+                + "]";
     }
 }
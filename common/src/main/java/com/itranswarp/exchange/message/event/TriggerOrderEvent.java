@@ -0,0 +1,37 @@
+package com.itranswarp.exchange.message.event;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
+import com.itranswarp.exchange.enums.TriggerType;
+
+import java.math.BigDecimal;
+
+/**
+ * Create a trigger order, which is placed as a normal order when market price crosses the trigger price.
+ */
+public class TriggerOrderEvent extends AbstractEvent{
+    public Long userId;
+
+    public TriggerType triggerType;
+
+    public BigDecimal triggerPrice;
+
+    public Direction direction;
+
+    public BigDecimal price;
+
+    public BigDecimal quantity;
+
+    public OrderType type;
+
+    public TimeInForce timeInForce;
+
+    @Override
+    public String toString() {
+        return "TriggerOrderEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
+                + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", triggerType="
+                + triggerType + ", triggerPrice=" + triggerPrice + ", direction=" + direction + ", price=" + price
+                + ", quantity=" + quantity + ", type=" + type + ", timeInForce=" + timeInForce + "]";
+    }
+}
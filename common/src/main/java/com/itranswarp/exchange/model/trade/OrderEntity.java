@@ -3,6 +3,8 @@ package com.itranswarp.exchange.model.trade;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 import com.itranswarp.exchange.model.support.EntitySupport;
 import jakarta.annotation.Nullable;
 import jakarta.persistence.*;
@@ -29,6 +31,12 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false, length = VAR_ENUM)
     public OrderStatus status;
 
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public OrderType type;
+
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public TimeInForce timeInForce;
+
     public void updateOrder(BigDecimal unfilledQuantity, OrderStatus status, long updatedAt){
         this.version++;
         this.unfilledQuantity = unfilledQuantity;
@@ -50,6 +58,17 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
 
     private int version;
 
+    /**
+     * Links of the per-user active order list, maintained by trading engine only.
+     */
+    @Transient
+    @JsonIgnore
+    public OrderEntity prevUserOrder;
+
+    @Transient
+    @JsonIgnore
+    public OrderEntity nextUserOrder;
+
     @Transient
     @JsonIgnore
     public int getVersion() {
@@ -80,6 +99,8 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
         }
         entity.createdAt = this.createdAt;
         entity.direction = this.direction;
+        entity.type = this.type;
+        entity.timeInForce = this.timeInForce;
         entity.id = this.id;
         entity.price = this.price;
         entity.quantity = this.quantity;
@@ -108,9 +129,9 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Override
     public String toString() {
         return "OrderEntity [id=" + id + ", sequenceId=" + sequenceId + ", direction=" + direction + ", userId="
-                + userId + ", status=" + status + ", price=" + price + ", createdAt=" + createdAt + ", updatedAt="
-                + updatedAt + ", version=" + version + ", quantity=" + quantity + ", unfilledQuantity="
-                + unfilledQuantity + "]";
+                + userId + ", status=" + status + ", type=" + type + ", timeInForce=" + timeInForce + ", price="
+                + price + ", createdAt=" + createdAt + ", updatedAt=" + updatedAt + ", version=" + version
+                + ", quantity=" + quantity + ", unfilledQuantity=" + unfilledQuantity + "]";
     }
 
     /**
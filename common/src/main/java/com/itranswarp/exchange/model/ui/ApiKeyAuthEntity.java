@@ -0,0 +1,40 @@
+package com.itranswarp.exchange.model.ui;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import com.itranswarp.exchange.model.support.EntitySupport;
+
+/**
+ * 使用API Key认证
+ */
+@Entity
+@Table(name = "api_key_auths")
+public class ApiKeyAuthEntity implements EntitySupport {
+
+    @Id
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public String apiKey;
+
+    /**
+     * 用于计算签名 API-Signature = HmacSHA256(payload, key=apiSecret).
+     */
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public String apiSecret;
+
+    @Column(nullable = false)
+    public long expiresAt;
+
+    /**
+     * 关联至用户ID.
+     */
+    @Column(nullable = false, updatable = false)
+    public Long userId;
+
+    @Override
+    public String toString() {
+        return "ApiKeyAuthEntity [apiKey=" + apiKey + ", expiresAt=" + expiresAt + ", userId=" + userId + "]";
+    }
+}
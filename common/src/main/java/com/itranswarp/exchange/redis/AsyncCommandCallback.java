@@ -0,0 +1,9 @@
+package com.itranswarp.exchange.redis;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+@FunctionalInterface
+public interface AsyncCommandCallback<T> {
+    RedisFuture<T> doInConnection(RedisAsyncCommands<String, String> commands);
+}
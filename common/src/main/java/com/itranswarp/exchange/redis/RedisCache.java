@@ -4,6 +4,28 @@ public interface RedisCache {
     public interface Topic{
         String TRADING_API_RESULT = "trading_api_result";
         String NOTIFICATION = "notification";
+        String ORDER_BOOK = "order_book";
+        String USER_STATE = "user_state";
+        String API_KEY_CHANGED = "api_key_changed";
+
+        /**
+         * Each API node subscribes only its own result topic.
+         */
+        static String tradingApiResult(String nodeId) {
+            return TRADING_API_RESULT + ":" + nodeId;
+        }
+
+        /**
+         * Private notifications are published to the shard of the user, so push nodes subscribe only the shards of
+         * users online.
+         */
+        static String notification(long userId, int shards) {
+            return notificationShard((int) Math.floorMod(userId, (long) shards));
+        }
+
+        static String notificationShard(int shard) {
+            return NOTIFICATION + ":" + shard;
+        }
     }
 
     public interface Key{
@@ -13,5 +35,13 @@ public interface RedisCache {
         String HOUR_BARS = "_hour_bars_";
         String MIN_BARS = "_min_bars_";
         String SEC_BARS = "_sec_bars_";
+        String API_SIGNATURE_PREFIX = "_api_sig_:";
+
+        /**
+         * Used API signature, kept until its timestamp is out of the window.
+         */
+        static String apiSignature(String apiKey, String timestamp, String signature) {
+            return API_SIGNATURE_PREFIX + apiKey + ":" + timestamp + ":" + signature;
+        }
     }
 }
@@ -0,0 +1,100 @@
+package com.itranswarp.exchange.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+/**
+ * Commands queued on one connection with auto-flush disabled, and written to Redis by a single flush.
+ *
+ * Not thread-safe. The connection is released when all replies are received after flush() or close().
+ */
+public class RedisPipeline implements AutoCloseable {
+
+    final RedisService redisService;
+    final StatefulRedisConnection<String, String> connection;
+    final RedisAsyncCommands<String, String> commands;
+    final List<CompletableFuture<?>> futures = new ArrayList<>();
+    CompletableFuture<Void> flushed = null;
+
+    RedisPipeline(RedisService redisService, StatefulRedisConnection<String, String> connection) {
+        this.redisService = redisService;
+        this.connection = connection;
+        this.connection.setAutoFlushCommands(false);
+        this.commands = connection.async();
+    }
+
+    /**
+     * Queue a command. The future completes after flush.
+     */
+    public <T> CompletableFuture<T> add(AsyncCommandCallback<T> callback) {
+        if (this.flushed != null) {
+            throw new IllegalStateException("Pipeline already flushed.");
+        }
+        CompletableFuture<T> future = callback.doInConnection(this.commands).toCompletableFuture();
+        this.futures.add(future);
+        return future;
+    }
+
+    public CompletableFuture<Long> publish(String topic, String data) {
+        return add(commands -> commands.publish(topic, data));
+    }
+
+    public CompletableFuture<String> set(String key, String value) {
+        return add(commands -> commands.set(key, value));
+    }
+
+    /**
+     * Queue EVALSHA of the script. On NOSCRIPT the returned future falls back to EVAL on the shared connection, so the
+     * caller should flush by close() and wait on the returned future instead of sync(), which fails on NOSCRIPT.
+     */
+    public <T> CompletableFuture<T> evalScript(RedisScript script, ScriptOutputType type, String[] keys,
+            String... values) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future = add(commands -> commands.evalsha(script.sha, type, keys, values));
+        return this.redisService.withEvalFallback(script, start, future, type, keys, values);
+    }
+
+    public int size() {
+        return this.futures.size();
+    }
+
+    /**
+     * Write all queued commands in one flush. The returned future completes when all replies are received.
+     */
+    public CompletableFuture<Void> flush() {
+        if (this.flushed == null) {
+            this.connection.flushCommands();
+            this.flushed = CompletableFuture.allOf(this.futures.toArray(CompletableFuture[]::new));
+            // 收到全部响应后再恢复自动flush并归还连接池:
+            this.flushed.whenComplete((r, e) -> release());
+        }
+        return this.flushed;
+    }
+
+    /**
+     * Flush and wait for all replies within the command timeout of the connection.
+     */
+    public void sync() {
+        flush();
+        if (!LettuceFutures.awaitAll(this.connection.getTimeout(), this.futures.toArray(CompletableFuture[]::new))) {
+            throw new RedisCommandTimeoutException("Pipeline timeout.");
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    void release() {
+        this.connection.setAutoFlushCommands(true);
+        this.connection.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.itranswarp.exchange.redis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.lettuce.core.RedisNoScriptException;
+
+/**
+ * A Lua script loaded from classpath, executed by EVALSHA with the source kept for EVAL fallback.
+ *
+ * Latency is measured from sending the command to receiving the reply. Thread-safe.
+ */
+public class RedisScript {
+
+    final String name;
+    final String source;
+    final String sha;
+
+    final LongAdder count = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder reloads = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    RedisScript(String name, String source, String sha) {
+        this.name = name;
+        this.source = source;
+        this.sha = sha;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getSha() {
+        return this.sha;
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    /**
+     * Number of NOSCRIPT replies, i.e. the script cache of Redis was flushed by restart, failover or SCRIPT FLUSH.
+     */
+    public long getReloads() {
+        return this.reloads.sum();
+    }
+
+    public double getMeanMillis() {
+        long n = this.count.sum();
+        return n == 0 ? 0 : this.totalNanos.sum() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Max latency since last call.
+     */
+    public double getAndResetMaxMillis() {
+        return this.maxNanos.getThenReset() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    void record(long startNanos, Throwable error) {
+        long nanos = System.nanoTime() - startNanos;
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+        if (error != null) {
+            this.errors.increment();
+        }
+    }
+
+    static boolean isNoScript(Throwable e) {
+        while (e != null) {
+            if (e instanceof RedisNoScriptException) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RedisScript[%s, count=%d, errors=%d, reloads=%d, mean=%.3fms]", this.name, getCount(),
+                getErrors(), getReloads(), getMeanMillis());
+    }
+}
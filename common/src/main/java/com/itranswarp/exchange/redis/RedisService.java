@@ -2,6 +2,9 @@ package com.itranswarp.exchange.redis;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import com.itranswarp.exchange.util.ClassPathUtil;
@@ -27,6 +30,10 @@ public class RedisService {
     final Logger logger = LoggerFactory.getLogger(getClass());
     final RedisClient redisClient;
     final GenericObjectPool<StatefulRedisConnection<String, String>> redisConnectionPool;
+    // 异步命令共享一个连接, Lettuce连接是线程安全的, 多个命令在同一连接上复用:
+    final StatefulRedisConnection<String, String> asyncConnection;
+    // classpath file -> script:
+    final Map<String, RedisScript> scripts = new ConcurrentHashMap<>();
     public RedisService(@Autowired RedisConfiguration redisConfig){
         RedisURI uri = RedisURI.Builder.redis(redisConfig.getHost(),redisConfig.getPort())
                 .withPassword(redisConfig.getPassword().toCharArray()).withDatabase(redisConfig.getDatabase())
@@ -40,24 +47,85 @@ public class RedisService {
         poolConfig.setTestWhileIdle(true);
         this.redisConnectionPool = ConnectionPoolSupport.createGenericObjectPool(() -> redisClient.connect(),
                 poolConfig);
+        this.asyncConnection = redisClient.connect();
     }
     @PreDestroy
     public void shutDown(){
+        this.asyncConnection.close();
         this.redisConnectionPool.clear();
         this.redisClient.shutdown();
     }
     public String loadScriptFromClassPath(String classPathFile){
-        String sha = executeSync(commands ->{
-            try{
-                return commands.scriptLoad(ClassPathUtil.readFile(classPathFile));
-            }catch (IOException e){
-                throw new UncheckedIOException("load file from classpath failed: " + classPathFile, e);
-            }
-        });
+        return registerScript(classPathFile).sha;
+    }
+
+    /**
+     * Load script from classpath and register it, so it can be executed by executeScript() even if the script cache
+     * of Redis is flushed later.
+     */
+    public RedisScript registerScript(String classPathFile) {
+        String source;
+        try {
+            source = ClassPathUtil.readFile(classPathFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("load file from classpath failed: " + classPathFile, e);
+        }
+        String sha = loadScript(source);
+        RedisScript script = new RedisScript(classPathFile, source, sha);
+        this.scripts.put(classPathFile, script);
         if (logger.isInfoEnabled()) {
             logger.info("loaded script {} from {}.", sha, classPathFile);
         }
-        return sha;
+        return script;
+    }
+
+    /**
+     * Execute script by EVALSHA, and by EVAL if Redis replies NOSCRIPT. EVAL also puts the script back to the script
+     * cache of Redis, so following EVALSHA succeed again.
+     */
+    public <T> T executeScript(RedisScript script, ScriptOutputType type, String[] keys, String... values) {
+        long start = System.nanoTime();
+        try {
+            T result = executeSync(commands -> {
+                try {
+                    return commands.evalsha(script.sha, type, keys, values);
+                } catch (RedisNoScriptException e) {
+                    onNoScript(script);
+                    return commands.eval(script.source, type, keys, values);
+                }
+            });
+            script.record(start, null);
+            return result;
+        } catch (RuntimeException e) {
+            script.record(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Same as executeScript() but on the shared connection without blocking the caller.
+     */
+    public <T> CompletableFuture<T> executeScriptAsync(RedisScript script, ScriptOutputType type, String[] keys,
+            String... values) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future = executeAsync(commands -> commands.evalsha(script.sha, type, keys, values));
+        return withEvalFallback(script, start, future, type, keys, values);
+    }
+
+    <T> CompletableFuture<T> withEvalFallback(RedisScript script, long start, CompletableFuture<T> future,
+            ScriptOutputType type, String[] keys, String[] values) {
+        return future.exceptionallyCompose(e -> {
+            if (RedisScript.isNoScript(e)) {
+                onNoScript(script);
+                return executeAsync(commands -> commands.eval(script.source, type, keys, values));
+            }
+            return CompletableFuture.failedFuture(e);
+        }).whenComplete((r, e) -> script.record(start, e));
+    }
+
+    void onNoScript(RedisScript script) {
+        script.reloads.increment();
+        logger.warn("script {} not found in redis, fallback to eval.", script.name);
     }
     String loadScript(String scriptContent){
         return executeSync(commands -> {
@@ -65,12 +133,30 @@ public class RedisService {
         });
     }
     public void subscribe(String channel, Consumer<String> listener){
+        subscribe(channel, listener, null);
+    }
+
+    /**
+     * Subscribe channel, and call onResubscribed after the connection is re-established, since messages published
+     * while disconnected are lost.
+     */
+    public void subscribe(String channel, Consumer<String> listener, Runnable onResubscribed){
         StatefulRedisPubSubConnection<String, String> conn = this.redisClient.connectPubSub();
         conn.addListener(new RedisPubSubAdapter<String, String>(){
+            boolean subscribed = false;
             @Override
             public void message(String channel, String message){
                 listener.accept(message);
             }
+            @Override
+            public void subscribed(String channel, long count){
+                // Lettuce重连后自动重新订阅, 第二次及以后的订阅确认即为重连:
+                if (this.subscribed && onResubscribed != null) {
+                    logger.warn("resubscribed channel after reconnect: {}", channel);
+                    onResubscribed.run();
+                }
+                this.subscribed = true;
+            }
         });
         conn.sync().subscribe(channel);
     }
@@ -92,12 +178,42 @@ public class RedisService {
         });
     }
 
+    public void set(String key, String value) {
+        executeSync((commands) -> {
+            return commands.set(key, value);
+        });
+    }
+
+    /**
+     * SET key value NX PX ttl on the shared connection, complete with true if the key did not exist.
+     */
+    public CompletableFuture<Boolean> setIfAbsentAsync(String key, String value, long ttlMillis) {
+        return executeAsync((commands) -> {
+            return commands.set(key, value, SetArgs.Builder.nx().px(ttlMillis));
+        }).thenApply("OK"::equals);
+    }
+
     public void publish(String topic, String data) {
         executeSync((commands) -> {
             return commands.publish(topic, data);
         });
     }
 
+    /**
+     * Publish messages of (topic, data) in one pipeline and wait for all replies, so N messages cost one round trip.
+     */
+    public void publishPipelined(List<Map.Entry<String, String>> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try (RedisPipeline pipeline = pipeline()) {
+            for (Map.Entry<String, String> message : messages) {
+                pipeline.publish(message.getKey(), message.getValue());
+            }
+            pipeline.sync();
+        }
+    }
+
     public List<String> lrange(String key, long start, long end) {
         return executeSync((commands) -> {
             return commands.lrange(key, start, end);
@@ -110,6 +226,45 @@ public class RedisService {
         });
     }
 
+    public CompletableFuture<List<String>> lrangeAsync(String key, long start, long end) {
+        return executeAsync((commands) -> {
+            return commands.lrange(key, start, end);
+        });
+    }
+
+    public CompletableFuture<List<String>> zrangebyscoreAsync(String key, long start, long end) {
+        return executeAsync((commands) -> {
+            return commands.zrangebyscore(key, Range.create(start, end));
+        });
+    }
+
+    /**
+     * Execute command on the shared connection without blocking the caller.
+     */
+    public <T> CompletableFuture<T> executeAsync(AsyncCommandCallback<T> callback) {
+        return callback.doInConnection(this.asyncConnection.async()).toCompletableFuture();
+    }
+
+    /**
+     * Open a pipeline on a pooled connection. Commands are queued until flush() and the connection is returned to the
+     * pool after all replies are received:
+     *
+     * <code>
+     * try (RedisPipeline pipeline = redisService.pipeline()) {
+     *     CompletableFuture&lt;Long&gt; f1 = pipeline.publish(topic1, data1);
+     *     CompletableFuture&lt;String&gt; f2 = pipeline.set(key, value);
+     * }
+     * </code>
+     */
+    public RedisPipeline pipeline() {
+        try {
+            return new RedisPipeline(this, redisConnectionPool.borrowObject());
+        } catch (Exception e) {
+            logger.warn("borrow redis connection failed.", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     public <T> T executeSync(SyncCommandCallback<T> callback) {
         try (StatefulRedisConnection<String, String> connection = redisConnectionPool.borrowObject()) {
             connection.setAutoFlushCommands(true);
@@ -0,0 +1,154 @@
+package com.itranswarp.exchange.bean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AuthTokenVerifierTest {
+    static final String HMAC_KEY = "test-hmac-key";
+    static final Long USER_A = 12345L;
+
+    AuthTokenVerifier verifier;
+
+    @BeforeEach
+    void init() {
+        this.verifier = new AuthTokenVerifier(HMAC_KEY, 3);
+    }
+
+    @Test
+    void verifyValidToken() {
+        long expiresAt = System.currentTimeMillis() + 3600_000;
+        String str = new AuthToken(USER_A, expiresAt).toSecureString(HMAC_KEY);
+        AuthToken token = this.verifier.verify(str);
+        assertEquals(USER_A, token.userId());
+        assertEquals(expiresAt, token.expiresAt());
+        assertFalse(token.isExpired());
+        // 与AuthToken.fromSecureString结果一致:
+        assertEquals(AuthToken.fromSecureString(str, HMAC_KEY), token);
+    }
+
+    @Test
+    void rejectTokenSignedByOtherKey() {
+        String str = new AuthToken(USER_A, System.currentTimeMillis() + 3600_000).toSecureString("other-key");
+        assertThrows(IllegalArgumentException.class, () -> this.verifier.verify(str));
+        assertTrue(this.verifier.cache.isEmpty());
+    }
+
+    @Test
+    void rejectTamperedPayload() {
+        long expiresAt = System.currentTimeMillis() + 3600_000;
+        String sig = signature(new AuthToken(USER_A, expiresAt).toSecureString(HMAC_KEY));
+        // 修改userId或expiresAt后签名不匹配:
+        assertThrows(IllegalArgumentException.class,
+                () -> this.verifier.verify(encode("12346:" + expiresAt + ":" + sig)));
+        assertThrows(IllegalArgumentException.class,
+                () -> this.verifier.verify(encode(USER_A + ":" + (expiresAt + 1) + ":" + sig)));
+    }
+
+    @Test
+    void rejectTamperedSignatureAtAnyPosition() {
+        String str = new AuthToken(USER_A, System.currentTimeMillis() + 3600_000).toSecureString(HMAC_KEY);
+        String decoded = decode(str);
+        int start = decoded.lastIndexOf(':') + 1;
+        // 逐位比较不提前返回, 任一位不同都必须拒绝:
+        for (int i = start; i < decoded.length(); i++) {
+            char c = decoded.charAt(i);
+            String tampered = decoded.substring(0, i) + (c == '0' ? '1' : '0') + decoded.substring(i + 1);
+            assertThrows(IllegalArgumentException.class, () -> this.verifier.verify(encode(tampered)));
+        }
+        // 只接受小写十六进制:
+        String upper = decoded.substring(0, start) + decoded.substring(start).toUpperCase();
+        assertThrows(IllegalArgumentException.class, () -> this.verifier.verify(encode(upper)));
+        assertTrue(this.verifier.cache.isEmpty());
+        // 原token仍有效:
+        assertEquals(USER_A, this.verifier.verify(str).userId());
+    }
+
+    @Test
+    void rejectMalformedToken() {
+        long expiresAt = System.currentTimeMillis() + 3600_000;
+        String sig = signature(new AuthToken(USER_A, expiresAt).toSecureString(HMAC_KEY));
+        for (String s : new String[] { "", ":", "::", USER_A + ":" + expiresAt, USER_A + ":" + expiresAt + ":",
+                USER_A + ":" + expiresAt + ":" + sig.substring(1), USER_A + ":" + expiresAt + ":" + sig + "0",
+                ":" + expiresAt + ":" + sig, USER_A + "::" + sig, "-1:" + expiresAt + ":" + sig,
+                "1234567890123456789:" + expiresAt + ":" + sig, USER_A + ":" + expiresAt + ":" + sig + ":" }) {
+            assertThrows(IllegalArgumentException.class, () -> this.verifier.verify(encode(s)), s);
+        }
+        // 非Base64:
+        assertThrows(IllegalArgumentException.class, () -> this.verifier.verify("not base64!"));
+        assertTrue(this.verifier.cache.isEmpty());
+    }
+
+    @Test
+    void expiredTokenIsNotCached() {
+        String str = new AuthToken(USER_A, System.currentTimeMillis() - 1000).toSecureString(HMAC_KEY);
+        // 签名正确的过期token由调用方检查isExpired():
+        AuthToken token = this.verifier.verify(str);
+        assertTrue(token.isExpired());
+        assertTrue(this.verifier.cache.isEmpty());
+    }
+
+    @Test
+    void cacheVerifiedToken() {
+        String str = new AuthToken(USER_A, System.currentTimeMillis() + 3600_000).toSecureString(HMAC_KEY);
+        AuthToken token = this.verifier.verify(str);
+        assertSame(token, this.verifier.cache.get(str));
+        assertSame(token, this.verifier.verify(str));
+    }
+
+    @Test
+    void expiredTokenInCacheIsVerifiedAgain() {
+        long expiresAt = System.currentTimeMillis() + 3600_000;
+        String str = new AuthToken(USER_A, expiresAt).toSecureString(HMAC_KEY);
+        AuthToken stale = new AuthToken(USER_A, System.currentTimeMillis() - 1000);
+        this.verifier.cache.put(str, stale);
+        AuthToken token = this.verifier.verify(str);
+        assertNotSame(stale, token);
+        assertEquals(expiresAt, token.expiresAt());
+        assertSame(token, this.verifier.cache.get(str));
+    }
+
+    @Test
+    void evictWhenCacheIsFull() {
+        long now = System.currentTimeMillis();
+        String expired = new AuthToken(1L, now + 3600_000).toSecureString(HMAC_KEY);
+        this.verifier.cache.put(expired, new AuthToken(1L, now - 1000));
+        this.verifier.verify(new AuthToken(2L, now + 3600_000).toSecureString(HMAC_KEY));
+        this.verifier.verify(new AuthToken(3L, now + 3600_000).toSecureString(HMAC_KEY));
+        assertEquals(3, this.verifier.cache.size());
+        // 缓存已满时先移除过期的:
+        String t4 = new AuthToken(4L, now + 3600_000).toSecureString(HMAC_KEY);
+        this.verifier.verify(t4);
+        assertEquals(3, this.verifier.cache.size());
+        assertFalse(this.verifier.cache.containsKey(expired));
+        // 没有过期的则全部清除:
+        String t5 = new AuthToken(5L, now + 3600_000).toSecureString(HMAC_KEY);
+        this.verifier.verify(t5);
+        assertEquals(1, this.verifier.cache.size());
+        assertTrue(this.verifier.cache.containsKey(t5));
+        // 清除后仍可重新验证:
+        assertEquals(4L, this.verifier.verify(t4).userId().longValue());
+    }
+
+    static String signature(String b64token) {
+        String s = decode(b64token);
+        return s.substring(s.lastIndexOf(':') + 1);
+    }
+
+    static String decode(String b64token) {
+        return new String(Base64.getUrlDecoder().decode(b64token), StandardCharsets.UTF_8);
+    }
+
+    static String encode(String token) {
+        return Base64.getUrlEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+}
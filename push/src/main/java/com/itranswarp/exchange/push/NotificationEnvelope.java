@@ -0,0 +1,59 @@
+package com.itranswarp.exchange.push;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Routing fields of a NotificationMessage. Only top-level fields are read and the data is skipped.
+ */
+record NotificationEnvelope(String type, Long userId, String resolution) {
+
+    static final String CHANNEL_ORDER_BOOK = "orderbook";
+    static final String CHANNEL_ORDER_BOOK_DELTA = "orderbook_delta";
+    static final String CHANNEL_TICK = "tick";
+    static final String CHANNEL_BAR_PREFIX = "bar.";
+    static final String CHANNEL_USER = "user";
+
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Public channel name, or null if this is a private message.
+     */
+    String channel() {
+        if (this.userId != null) {
+            return null;
+        }
+        if ("bar".equals(this.type) && this.resolution != null) {
+            return CHANNEL_BAR_PREFIX + this.resolution;
+        }
+        return this.type;
+    }
+
+    static NotificationEnvelope parse(String text) throws IOException {
+        String type = null;
+        Long userId = null;
+        String resolution = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(text)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expect json object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (name) {
+                    case "type" -> type = parser.getValueAsString();
+                    case "resolution" -> resolution = parser.getValueAsString();
+                    case "userId" -> userId = token == JsonToken.VALUE_NULL ? null : parser.getValueAsLong();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        if (type == null) {
+            throw new IOException("Missing type.");
+        }
+        return new NotificationEnvelope(type, userId, resolution);
+    }
+}
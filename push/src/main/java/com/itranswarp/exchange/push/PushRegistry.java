@@ -0,0 +1,341 @@
+package com.itranswarp.exchange.push;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ServerWebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Channel subscriptions of all clients on this node, shared by all PushVerticle instances.
+ */
+public class PushRegistry {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    static final String USER_CHANNEL_PREFIX=NotificationEnvelope.CHANNEL_USER+".";
+    // 写队列持续满超过该时间(毫秒)的连接将被关闭:
+    private final long slowClientTimeout;
+    // channel -> (event loop context -> clients), 私有频道为user.{userId}:
+    private final Map<String, Map<Context, Set<Client>>> channelToClientsMap=new ConcurrentHashMap<>(100);
+    // client -> 已订阅的频道:
+    private final Map<Client, Set<String>> clientToChannelsMap=new ConcurrentHashMap<>(10000);
+    // 仍使用默认订阅的clients:
+    final Set<Client> defaultClients=ConcurrentHashMap.newKeySet();
+    // 每个shard的在线用户数:
+    private final int[] shardUsers;
+    private ShardListener shardListener=null;
+    // 最新的OrderBook快照消息, 新订阅增量的客户端先收到该快照:
+    private volatile Buffer orderBookSnapshot=null;
+    // 快照的sequenceId, 启动时GET的结果可能晚于订阅收到的快照:
+    private long orderBookSequenceId=0;
+
+    PushRegistry(int shards, long slowClientTimeout){
+        this.shardUsers=new int[shards];
+        this.slowClientTimeout=slowClientTimeout;
+    }
+
+    void subscribe(Client client, List<String> channels){
+        Set<String> subscribed=this.clientToChannelsMap.computeIfAbsent(client,k->ConcurrentHashMap.newKeySet());
+        for(String channel:channels){
+            subscribed.add(channel);
+            // 在compute中添加, 避免与removeFromChannel并发时加入已删除的频道:
+            this.channelToClientsMap.compute(channel,(k,groups)->{
+                if(groups==null){
+                    updateShard(k,1);
+                    groups=new ConcurrentHashMap<>();
+                }
+                groups.computeIfAbsent(client.context(),c->ConcurrentHashMap.newKeySet()).add(client);
+                return groups;
+            });
+        }
+    }
+
+    void unsubscribe(Client client, List<String> channels){
+        Set<String> subscribed=this.clientToChannelsMap.get(client);
+        if(subscribed==null){
+            return;
+        }
+        for(String channel:channels){
+            subscribed.remove(channel);
+            removeFromChannel(channel,client);
+        }
+    }
+
+    void unsubscribeAll(Client client){
+        this.defaultClients.remove(client);
+        Set<String> subscribed=this.clientToChannelsMap.remove(client);
+        if(subscribed!=null){
+            for(String channel:subscribed){
+                removeFromChannel(channel,client);
+            }
+        }
+    }
+
+    void removeFromChannel(String channel, Client client){
+        this.channelToClientsMap.computeIfPresent(channel,(k,groups)->{
+            Set<Client> clients=groups.get(client.context());
+            if(clients!=null){
+                clients.remove(client);
+            }
+            // 私有频道无订阅者时删除:
+            boolean empty=groups.values().stream().allMatch(Set::isEmpty);
+            if(empty&&isUserChannel(channel)){
+                updateShard(channel,-1);
+                return null;
+            }
+            return groups;
+        });
+    }
+
+    /**
+     * Update snapshot by the order book JSON published to ORDER_BOOK topic, and send it to orderbook channel. A
+     * snapshot not newer than the current one is dropped.
+     */
+    public void updateOrderBook(String json){
+        long sequenceId;
+        try{
+            sequenceId=parseSequenceId(json);
+        }catch (Exception e){
+            logger.error("invalid order book: {}", json);
+            return;
+        }
+        Buffer snapshot=Buffer.buffer("{\"type\":\"orderbook\",\"data\":"+json+"}");
+        synchronized (this){
+            if(sequenceId<=this.orderBookSequenceId){
+                logger.debug("ignore order book of sequence id {}.", sequenceId);
+                return;
+            }
+            this.orderBookSequenceId=sequenceId;
+            this.orderBookSnapshot=snapshot;
+            // 在锁内广播, 保证各连接按sequenceId顺序收到快照; 慢连接只保留最新快照:
+            broadcast(NotificationEnvelope.CHANNEL_ORDER_BOOK,snapshot);
+        }
+    }
+
+    /**
+     * Read the top-level sequenceId of order book JSON without parsing the price levels.
+     */
+    static long parseSequenceId(String json) throws IOException {
+        try(JsonParser parser=NotificationEnvelope.JSON_FACTORY.createParser(json)){
+            if(parser.nextToken()!=JsonToken.START_OBJECT){
+                throw new IOException("Expect json object.");
+            }
+            while(parser.nextToken()==JsonToken.FIELD_NAME){
+                String name=parser.getCurrentName();
+                parser.nextToken();
+                if("sequenceId".equals(name)){
+                    return parser.getValueAsLong();
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("Missing sequenceId.");
+    }
+
+    /**
+     * Must be called on the context of the client.
+     */
+    void sendOrderBookSnapshot(Client client){
+        Buffer snapshot=this.orderBookSnapshot;
+        if(snapshot!=null){
+            client.webSocket().writeFrame(SharedTextFrame.of(snapshot));
+        }
+    }
+
+    public void broadcast(String text){
+        NotificationEnvelope envelope;
+        try{
+            envelope=NotificationEnvelope.parse(text);
+        }catch (Exception e){
+            logger.error("invalid message format: {}", text);
+            return;
+        }
+        String channel=envelope.userId()==null?envelope.channel():USER_CHANNEL_PREFIX+envelope.userId();
+        if(logger.isDebugEnabled()){
+            logger.debug("try broadcast message to channel {}: {}", channel, text);
+        }
+        // 只编码一次, 所有连接共享同一个Buffer:
+        broadcast(channel,Buffer.buffer(text));
+    }
+
+    void broadcast(String channel, Buffer payload){
+        Map<Context, Set<Client>> groups=this.channelToClientsMap.get(channel);
+        if(groups==null){
+            return;
+        }
+        boolean conflatable=isConflatable(channel);
+        for(Map.Entry<Context, Set<Client>> entry:groups.entrySet()){
+            Set<Client> clients=entry.getValue();
+            if(clients.isEmpty()){
+                continue;
+            }
+            entry.getKey().runOnContext(v->{
+                for(Client client:clients){
+                    client.write(channel,payload,conflatable);
+                }
+            });
+        }
+    }
+
+    /**
+     * Order book and bar messages carry the latest state, so a lagging client only needs the newest one.
+     */
+    static boolean isConflatable(String channel){
+        return NotificationEnvelope.CHANNEL_ORDER_BOOK.equals(channel)
+                ||channel.startsWith(NotificationEnvelope.CHANNEL_BAR_PREFIX);
+    }
+
+    void closeSlowClients(){
+        long now=System.currentTimeMillis();
+        for(Client client:this.clientToChannelsMap.keySet()){
+            long fullSince=client.fullSince;
+            if(fullSince>0&&now-fullSince>this.slowClientTimeout){
+                client.fullSince=0;
+                client.context.runOnContext(v->client.close());
+            }
+        }
+    }
+
+    static boolean isUserChannel(String channel){
+        return channel.startsWith(USER_CHANNEL_PREFIX);
+    }
+
+    /**
+     * Count online users per shard, and notify listener when a shard becomes active or inactive.
+     */
+    void updateShard(String channel, int delta){
+        if(!isUserChannel(channel)){
+            return;
+        }
+        long userId=Long.parseLong(channel.substring(USER_CHANNEL_PREFIX.length()));
+        int shard=(int) Math.floorMod(userId,(long) this.shardUsers.length);
+        synchronized (this.shardUsers){
+            int n=this.shardUsers[shard];
+            this.shardUsers[shard]=n+delta;
+            if(this.shardListener!=null&&(n==0||n+delta==0)){
+                this.shardListener.onShardChanged(shard,n==0);
+            }
+        }
+    }
+
+    /**
+     * Set listener and notify it of all currently active shards.
+     */
+    void setShardListener(ShardListener listener){
+        synchronized (this.shardUsers){
+            this.shardListener=listener;
+            for(int i=0;i<this.shardUsers.length;i++){
+                if(this.shardUsers[i]>0){
+                    listener.onShardChanged(i,true);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface ShardListener {
+        void onShardChanged(int shard, boolean active);
+    }
+
+    static final class Client {
+        final PushRegistry registry;
+        final ServerWebSocket webSocket;
+        final Context context;
+        // 写队列满后允许继续写入的不可合并消息字节数, 超过则立刻关闭连接:
+        final int overflowLimit;
+        // 写队列满时暂存的可合并消息 channel -> 最新payload, 仅在context上访问:
+        final Map<String, Buffer> conflated=new LinkedHashMap<>();
+        // 写队列满后已写入的不可合并消息字节数, 仅在context上访问:
+        int overflowBytes=0;
+        // 写队列满时丢弃了增量, 恢复后需先重发快照, 仅在context上访问:
+        boolean snapshotPending=false;
+        // 写队列开始满的时间, 0表示未满:
+        volatile long fullSince=0;
+
+        Client(PushRegistry registry, ServerWebSocket webSocket, Context context, int overflowLimit){
+            this.registry=registry;
+            this.webSocket=webSocket;
+            this.context=context;
+            this.overflowLimit=overflowLimit;
+        }
+
+        ServerWebSocket webSocket(){
+            return this.webSocket;
+        }
+
+        Context context(){
+            return this.context;
+        }
+
+        /**
+         * Must be called on the context of this client.
+         */
+        void write(String channel, Buffer payload, boolean conflatable){
+            if(this.webSocket.writeQueueFull()){
+                if(this.fullSince==0){
+                    this.fullSince=System.currentTimeMillis();
+                }
+                if(conflatable){
+                    // 覆盖尚未发送的旧状态:
+                    this.conflated.put(channel,payload);
+                    return;
+                }
+                if(NotificationEnvelope.CHANNEL_ORDER_BOOK_DELTA.equals(channel)){
+                    // 丢弃增量, 恢复后用快照重新衔接:
+                    this.snapshotPending=true;
+                    return;
+                }
+                // tick和私有消息不能丢弃, 只允许有限的超额写入:
+                this.overflowBytes+=payload.length();
+                if(this.overflowBytes>this.overflowLimit){
+                    close();
+                    return;
+                }
+            }else if(!this.conflated.isEmpty()||this.snapshotPending){
+                this.conflated.remove(channel);
+                flush();
+            }
+            this.webSocket.writeFrame(SharedTextFrame.of(payload));
+        }
+
+        /**
+         * Called by drain handler: resend snapshot if deltas were dropped, then write conflated messages.
+         */
+        void flush(){
+            if(this.snapshotPending&&!this.webSocket.writeQueueFull()){
+                this.snapshotPending=false;
+                this.registry.sendOrderBookSnapshot(this);
+            }
+            Iterator<Buffer> it=this.conflated.values().iterator();
+            while(it.hasNext()&&!this.webSocket.writeQueueFull()){
+                this.webSocket.writeFrame(SharedTextFrame.of(it.next()));
+                it.remove();
+            }
+            if(!this.webSocket.writeQueueFull()){
+                this.overflowBytes=0;
+                this.fullSince=0;
+            }
+        }
+
+        /**
+         * Must be called on the context of this client.
+         */
+        void close(){
+            if(this.webSocket.isClosed()){
+                return;
+            }
+            this.registry.logger.warn("close slow websocket client: {}", this.webSocket.remoteAddress());
+            this.webSocket.close((short) 1008,"slow consumer");
+        }
+    }
+
+}
@@ -1,18 +1,38 @@
 package com.itranswarp.exchange.push;
 
+import com.itranswarp.exchange.bean.AuthTokenVerifier;
 import com.itranswarp.exchange.redis.RedisCache;
 import com.itranswarp.exchange.support.LoggerSupport;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.redis.client.*;
 import io.vertx.redis.client.impl.types.BulkType;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
+@Component
 public class PushService extends LoggerSupport {
     @Value("${server.port}")
     private int serverPort;
-    @Value("{exchange.config.hmac-key}")
+    @Value("${exchange.config.hmac-key}")
     String hmacKey;
+    @Value("${exchange.config.push-write-queue-max-size:262144}")
+    int writeQueueMaxSize = 262144;
+    @Value("${exchange.config.push-slow-client-timeout:10000}")
+    long slowClientTimeout = 10000;
+    // 0表示每个CPU核心一个实例:
+    @Value("${exchange.config.push-instances:0}")
+    int instances = 0;
+    // permessage-deflate压缩级别(1~9), 0表示不压缩:
+    @Value("${exchange.config.push-compression-level:4}")
+    int compressionLevel = 4;
+    // 是否允许客户端要求服务器不保留压缩上下文:
+    @Value("${exchange.config.push-compression-allow-no-context:true}")
+    boolean compressionAllowNoContext = true;
+    @Value("${exchange.config.notification-shards:64}")
+    int notificationShards = 64;
     @Value("${spring.redis.standalone.host:localhost}")
     private String redisHost;
 
@@ -31,13 +51,27 @@ public class PushService extends LoggerSupport {
     public void startVertx(){
         logger.info("start vertx...");
         this.vertx=Vertx.vertx();
-        var push = new PushVerticle(this.hmacKey,this.serverPort);
-        vertx.deployVerticle(push);
+        var registry = new PushRegistry(this.notificationShards, this.slowClientTimeout);
+        var verifier = new AuthTokenVerifier(this.hmacKey);
+        var serverOptions = createServerOptions();
+        int n = this.instances > 0 ? this.instances : Runtime.getRuntime().availableProcessors();
+        // 多个实例监听同一端口, 由Vert.x将连接分配到各实例的event loop:
+        vertx.deployVerticle(() -> new PushVerticle(verifier, this.serverPort, serverOptions, this.writeQueueMaxSize,
+                registry),
+                new DeploymentOptions().setInstances(n));
+        vertx.setPeriodic(1000, id -> registry.closeSlowClients());
+        logger.info("deploy {} push verticle instances.", n);
         String url = "redis://" + (this.redisPassword.isEmpty() ? "" : ":" + this.redisPassword + "@") + this.redisHost
                 + ":" + this.redisPort + "/" + this.redisDatabase;
         logger.info("create redis client: {}",url);
         Redis redis = Redis.createClient(vertx,url);
 
+        // 加载启动时的OrderBook快照, 之后由ORDER_BOOK频道更新, 晚到的旧快照按sequenceId丢弃:
+        redis.send(Request.cmd(Command.GET).arg(RedisCache.Key.ORDER_BOOK)).onSuccess(resp -> {
+            if (resp != null) {
+                registry.updateOrderBook(resp.toString());
+            }
+        });
         redis.connect().onSuccess(conn->{
             logger.info("connect to redis ok.");
             conn.handler(response->{
@@ -50,24 +84,58 @@ public class PushService extends LoggerSupport {
                             if(logger.isDebugEnabled()){
                                 logger.debug("receive push message: {}", msg);
                             }
-                            push.broadcast(msg);
+                            if(RedisCache.Topic.ORDER_BOOK.equals(response.get(1).toString())){
+                                registry.updateOrderBook(msg);
+                            }else{
+                                registry.broadcast(msg);
+                            }
                         }
                     }
                 }
             });
             logger.info("try subscribe...");
-            conn.send(Request.cmd(Command.SUBSCRIBE).arg(RedisCache.Topic.NOTIFICATION)).onSuccess(resp->{
+            conn.send(Request.cmd(Command.SUBSCRIBE).arg(RedisCache.Topic.NOTIFICATION)
+                    .arg(RedisCache.Topic.ORDER_BOOK)).onSuccess(resp->{
                 logger.info("suscibe ok.");
             }).onFailure(err->{
                 logger.error("subscribe failed.",err);
                 System.exit(1);
             });
+            // 私有消息按用户分片, 仅订阅本节点有在线用户的分片:
+            registry.setShardListener((shard, active) -> {
+                String topic = RedisCache.Topic.notificationShard(shard);
+                conn.send(Request.cmd(active ? Command.SUBSCRIBE : Command.UNSUBSCRIBE).arg(topic)).onFailure(err -> {
+                    logger.error("subscribe shard failed: " + topic, err);
+                });
+            });
         }).onFailure(err->{
             logger.error("connect to redis failed.",err);
             System.exit(1);
         });
     }
 
+    /**
+     * Negotiate permessage-deflate with clients. Market data messages repeat the same keys and numbers, so a low
+     * compression level already removes most bytes at a fraction of the CPU of the default level.
+     */
+    HttpServerOptions createServerOptions(){
+        var options = new HttpServerOptions();
+        if (this.compressionLevel > 0) {
+            options.setPerMessageWebSocketCompressionSupported(true)
+                    .setPerFrameWebSocketCompressionSupported(false)
+                    .setWebSocketCompressionLevel(this.compressionLevel)
+                    // 保留上下文时后续消息可引用之前的内容, 压缩率更高, 但每个连接需要额外的内存:
+                    .setWebSocketAllowServerNoContext(this.compressionAllowNoContext)
+                    .setWebSocketPreferredClientNoContext(false);
+        } else {
+            options.setPerMessageWebSocketCompressionSupported(false)
+                    .setPerFrameWebSocketCompressionSupported(false);
+        }
+        logger.info("websocket compression level: {}, allow no context: {}", this.compressionLevel,
+                this.compressionAllowNoContext);
+        return options;
+    }
+
     void exit(int exitCode){
         this.vertx.close();
         System.exit(exitCode);
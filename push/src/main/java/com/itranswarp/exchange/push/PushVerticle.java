@@ -1,44 +1,49 @@
 package com.itranswarp.exchange.push;
 
 import com.itranswarp.exchange.bean.AuthToken;
-import com.itranswarp.exchange.message.NotificationMessage;
+import com.itranswarp.exchange.bean.AuthTokenVerifier;
+import com.itranswarp.exchange.enums.BarType;
 import com.itranswarp.exchange.util.JsonUtil;
 import io.vertx.core.AbstractVerticle;
-import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.ext.web.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 public class PushVerticle extends AbstractVerticle {
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private final String hmacKey;
+    private final AuthTokenVerifier authTokenVerifier;
     private final int serverPort;
-    PushVerticle(String hmacKey, int serverPort){
-        this.hmacKey=hmacKey;
+    private final HttpServerOptions serverOptions;
+    // 每个连接的写队列上限(字节):
+    private final int writeQueueMaxSize;
+    // 所有实例共享:
+    private final PushRegistry registry;
+    PushVerticle(AuthTokenVerifier authTokenVerifier, int serverPort, HttpServerOptions serverOptions,
+            int writeQueueMaxSize, PushRegistry registry){
+        this.authTokenVerifier=authTokenVerifier;
         this.serverPort=serverPort;
+        this.serverOptions=serverOptions;
+        this.writeQueueMaxSize=writeQueueMaxSize;
+        this.registry=registry;
     }
-    private final Map<String,Boolean> handlersSet=new ConcurrentHashMap<>(10000);
-    private final Map<Long, Set<String>> userToHandlersMap=new ConcurrentHashMap<>(1000);
-    private final Map<String,Long> handlerToUserMap=new ConcurrentHashMap<>(1000);
     @Override
     public void start(){
-        HttpServer server=vertx.createHttpServer();
+        HttpServer server=vertx.createHttpServer(this.serverOptions);
         Router router=Router.router(vertx);
         router.get("/notification").handler(requestHandler->{
             HttpServerRequest request=requestHandler.request();
             Supplier<Long> supplier=()->{
               String tokenStr=request.getParam("token");
               if(tokenStr!=null&&!tokenStr.isEmpty()){
-                  AuthToken token=AuthToken.fromSecureString(tokenStr,this.hmacKey);
+                  AuthToken token=this.authTokenVerifier.verify(tokenStr);
                   if(!token.isExpired()){
                       return token.userId();
                   }
@@ -74,8 +79,14 @@ public class PushVerticle extends AbstractVerticle {
     void initWebSocket(ServerWebSocket webSocket, Long userId){
         String handlerId = webSocket.textHandlerID();
         logger.info("websocket accept userId: "+userId+", handlerId: "+handlerId);
+        // 记录连接所在的event loop, 广播时在该event loop上直接写入, 写队列满后最多再超额写入一个队列的数据:
+        PushRegistry.Client client=new PushRegistry.Client(registry,webSocket,vertx.getOrCreateContext(),
+                this.writeQueueMaxSize);
+        webSocket.setWriteQueueMaxSize(this.writeQueueMaxSize);
+        webSocket.drainHandler(v->client.flush());
         webSocket.textMessageHandler(str->{
             logger.info("text message: "+str);
+            onClientMessage(client, userId, str);
         });
         webSocket.exceptionHandler(t->{
             logger.error("websocket error: "+t.getMessage(),t);
@@ -83,12 +94,12 @@ public class PushVerticle extends AbstractVerticle {
 
         // on close:
         webSocket.closeHandler(e -> {
-            unsubscribeClient(handlerId);
-            unsubscribeUser(handlerId, userId);
+            registry.unsubscribeAll(client);
             logger.info("websocket closed: " + handlerId);
         });
-        subscribeClient(handlerId);
-        subscribeUser(handlerId, userId);
+        // 未发送订阅请求的客户端默认订阅全部公共频道和自己的私有频道:
+        registry.defaultClients.add(client);
+        registry.subscribe(client, defaultChannels(userId));
         // send welcome message:
         if (userId == null) {
             webSocket.writeTextMessage(
@@ -100,164 +111,100 @@ public class PushVerticle extends AbstractVerticle {
         }
     }
 
-    void subscribeClient(String handlerid){
-        this.handlersSet.put(handlerid,Boolean.TRUE);
-    }
-    void unsubscribeClient(String handlerId){
-        this.handlersSet.remove(handlerId);
-    }
-    void subscribeUser(String handlerId, Long userId){
-        if (userId == null) {
+    /**
+     * Handle {"action":"subscribe","channels":["orderbook","tick","bar.MIN","user"]}. The first subscribe replaces
+     * the default channels.
+     */
+    void onClientMessage(PushRegistry.Client client, Long userId, String text){
+        ServerWebSocket webSocket=client.webSocket();
+        SubscribeRequest req;
+        try{
+            req=JsonUtil.readJson(text,SubscribeRequest.class);
+        }catch (Exception e){
+            webSocket.writeTextMessage("{\"type\":\"status\",\"status\":\"error\",\"message\":\"invalid request\"}");
             return;
         }
-        handlerToUserMap.put(handlerId, userId);
-        Set<String> set = userToHandlersMap.get(userId);
-        if (set == null) {
-            set = new HashSet<>();
-            userToHandlersMap.put(userId, set);
-        }
-        set.add(handlerId);
-        logger.info("subscribe user {} {} ok.", userId, handlerId);
-    }
-
-    void unsubscribeUser(String handlerId, Long userId) {
-        if (userId == null) {
-            return;
+        List<String> channels=new ArrayList<>();
+        if(req.channels!=null){
+            for(String name:req.channels){
+                // 匿名用户忽略私有频道:
+                if(userId==null&&NotificationEnvelope.CHANNEL_USER.equals(name)){
+                    continue;
+                }
+                String channel=toChannel(name,userId);
+                if(channel==null){
+                    webSocket.writeTextMessage(
+                            "{\"type\":\"status\",\"status\":\"error\",\"message\":\"invalid channel\"}");
+                    return;
+                }
+                channels.add(channel);
+            }
         }
-        handlerToUserMap.remove(handlerId);
-        Set<String> set = userToHandlersMap.get(userId);
-        if (set != null) {
-            set.remove(handlerId);
-            if (set.isEmpty()) {
-                userToHandlersMap.remove(userId);
-                logger.info("unsubscribe user {} {} ok: cleared.", userId, handlerId);
-            } else {
-                logger.info("unsubscribe user {} {} ok: but still others online.", userId, handlerId);
+        if("subscribe".equals(req.action)){
+            if(registry.defaultClients.remove(client)){
+                registry.unsubscribeAll(client);
+            }
+            registry.subscribe(client,channels);
+            // 订阅增量后先发送完整快照, 之后的增量按sequenceId衔接:
+            if(channels.contains(NotificationEnvelope.CHANNEL_ORDER_BOOK_DELTA)){
+                registry.sendOrderBookSnapshot(client);
             }
+        }else if("unsubscribe".equals(req.action)){
+            registry.defaultClients.remove(client);
+            registry.unsubscribe(client,channels);
+        }else{
+            webSocket.writeTextMessage("{\"type\":\"status\",\"status\":\"error\",\"message\":\"invalid action\"}");
+            return;
         }
+        webSocket.writeTextMessage("{\"type\":\"status\",\"status\":\"ok\",\"action\":\""+req.action+"\"}");
     }
 
-    public void broadcast(String text){
-        NotificationMessage message = null;
-        try{
-            message= JsonUtil.readJson(text,NotificationMessage.class);
-        }catch (Exception e){
-            logger.error("invalid message format: {}", text);
-            return;
+    /**
+     * Convert channel name from client to internal channel, or null if invalid.
+     */
+    static String toChannel(String name, Long userId){
+        if(name==null){
+            return null;
         }
-        if(message.userId==null) {
-            if (logger.isInfoEnabled()) {
-                logger.info("try broadcast message to all: {}", text);
-            }
-            EventBus eb = vertx.eventBus();
-            for (String handler : this.handlersSet.keySet()) {
-                eb.send(handler, text);
-            }
-        }else {
-            if(logger.isInfoEnabled()){
-                logger.info("try broadcast message to user {}: {}", message.userId, text);
-            }
-            Set<String> handlers = this.userToHandlersMap.get(message.userId);
-            if(handlers!=null){
-                EventBus eb = vertx.eventBus();
-                for (String handler: handlers){
-                    eb.send(handler,text);
+        switch (name){
+            case NotificationEnvelope.CHANNEL_ORDER_BOOK:
+            case NotificationEnvelope.CHANNEL_ORDER_BOOK_DELTA:
+            case NotificationEnvelope.CHANNEL_TICK:
+                return name;
+            case NotificationEnvelope.CHANNEL_USER:
+                return userId==null?null:userChannel(userId);
+            default:
+                if(name.startsWith(NotificationEnvelope.CHANNEL_BAR_PREFIX)){
+                    String resolution=name.substring(NotificationEnvelope.CHANNEL_BAR_PREFIX.length());
+                    for(BarType type:BarType.values()){
+                        if(type.name().equals(resolution)){
+                            return name;
+                        }
+                    }
                 }
-            }
+                return null;
         }
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    static String userChannel(Long userId){
+        return PushRegistry.USER_CHANNEL_PREFIX+userId;
+    }
 
+    static List<String> defaultChannels(Long userId){
+        List<String> channels=new ArrayList<>();
+        channels.add(NotificationEnvelope.CHANNEL_ORDER_BOOK);
+        channels.add(NotificationEnvelope.CHANNEL_TICK);
+        for(BarType type:BarType.values()){
+            channels.add(NotificationEnvelope.CHANNEL_BAR_PREFIX+type.name());
+        }
+        if(userId!=null){
+            channels.add(userChannel(userId));
+        }
+        return channels;
+    }
 
+    public static class SubscribeRequest {
+        public String action;
+        public List<String> channels;
+    }
+}
@@ -0,0 +1,42 @@
+package com.itranswarp.exchange.push;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.WebSocketFrame;
+import io.vertx.core.http.WebSocketFrameType;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+
+/**
+ * The only place using Vert.x internal WebSocketFrameImpl.
+ *
+ * The public WebSocketFrame.textFrame(String, boolean) encodes the string again for every frame, so a broadcast to N
+ * clients would encode the same message N times. WebSocketFrameImpl wraps Buffer.getByteBuf(), a duplicate of the
+ * unreleasable heap buffer, so one encoded payload is shared by all connections. If the internal class is missing
+ * after a Vert.x upgrade, fall back to the public API.
+ */
+final class SharedTextFrame {
+
+    private static final boolean SHARED=isAvailable();
+
+    private SharedTextFrame(){
+    }
+
+    static WebSocketFrame of(Buffer payload){
+        return SHARED?Internal.of(payload):WebSocketFrame.textFrame(payload.toString(),true);
+    }
+
+    private static boolean isAvailable(){
+        try{
+            Class.forName("io.vertx.core.http.impl.ws.WebSocketFrameImpl",false,SharedTextFrame.class.getClassLoader());
+            return true;
+        }catch (ClassNotFoundException|LinkageError e){
+            return false;
+        }
+    }
+
+    // 单独的类, 内部类缺失时不会被加载:
+    private static final class Internal {
+        static WebSocketFrame of(Buffer payload){
+            return new WebSocketFrameImpl(WebSocketFrameType.TEXT,payload.getByteBuf(),true);
+        }
+    }
+}
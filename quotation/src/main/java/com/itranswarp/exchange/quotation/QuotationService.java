@@ -10,10 +10,13 @@ import com.itranswarp.exchange.messaging.MessagingFactory;
 import com.itranswarp.exchange.model.quotation.*;
 import com.itranswarp.exchange.model.support.AbstractBarEntity;
 import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisPipeline;
+import com.itranswarp.exchange.redis.RedisScript;
 import com.itranswarp.exchange.redis.RedisService;
 import com.itranswarp.exchange.support.LoggerSupport;
 import com.itranswarp.exchange.util.IpUtil;
 import com.itranswarp.exchange.util.JsonUtil;
+import io.lettuce.core.ScriptOutputType;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +28,7 @@ import java.time.ZoneId;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 @Component
@@ -37,14 +41,18 @@ public class QuotationService extends LoggerSupport {
     private MessagingFactory messagingFactory;
     @Autowired
     private RedisService redisService;
+    @Autowired
+    private RedisScriptMetrics redisScriptMetrics;
     private MessageConsumer tickConsumer;
-    private String shaUpdateRecentTicksLua = null;
-    private String shaUpdateBarLua = null;
+    private RedisScript updateRecentTicksScript = null;
+    private RedisScript updateBarScript = null;
     private long sequenceId;
     @PostConstruct
     public void init() throws Exception{
-        this.shaUpdateRecentTicksLua = this.redisService.loadScriptFromClassPath("/redis/update-recent-ticks.lua");
-        this.shaUpdateBarLua = this.redisService.loadScriptFromClassPath("/redis/update-bar.lua");
+        this.updateRecentTicksScript = this.redisService.registerScript("/redis/update-recent-ticks.lua");
+        this.updateBarScript = this.redisService.registerScript("/redis/update-bar.lua");
+        this.redisScriptMetrics.register(this.updateRecentTicksScript);
+        this.redisScriptMetrics.register(this.updateBarScript);
         String groupId = Messaging.Topic.TICK.name()+"_"+ IpUtil.getHostId();
         this.tickConsumer = messagingFactory.createBatchMessageListener(Messaging.Topic.TICK,groupId,this::processMessages);
     }
@@ -106,32 +114,38 @@ public class QuotationService extends LoggerSupport {
         if (logger.isDebugEnabled()) {
             logger.debug("generated ticks data: {}", ticksData);
         }
-        Boolean tickOk = redisService.executeScriptReturnBoolean(this.shaUpdateRecentTicksLua,
-                new String[] { RedisCache.Key.RECENT_TICKS },
-                new String[] { String.valueOf(this.sequenceId), ticksData, ticksStrJoiner.toString() });
-        if (!tickOk.booleanValue()) {
+        String[] tickArgs = new String[] { String.valueOf(this.sequenceId), ticksData, ticksStrJoiner.toString() };
+        String[] barKeys = new String[] { RedisCache.Key.SEC_BARS, RedisCache.Key.MIN_BARS, RedisCache.Key.HOUR_BARS,
+                RedisCache.Key.DAY_BARS };
+        String[] barArgs = new String[] { // ARGV
+                String.valueOf(this.sequenceId), // sequence id
+                String.valueOf(secStartTime), // sec-start-time
+                String.valueOf(minStartTime), // min-start-time
+                String.valueOf(hourStartTime), // hour-start-time
+                String.valueOf(dayStartTime), // day-start-time
+                String.valueOf(openPrice), // open
+                String.valueOf(highPrice), // high
+                String.valueOf(lowPrice), // low
+                String.valueOf(closePrice), // close
+                String.valueOf(quantity) // quantity
+        };
+        // 两个脚本在同一个pipeline中发送, 只需一次往返. 两个脚本都会忽略已处理过的sequenceId:
+        CompletableFuture<Boolean> tickFuture;
+        CompletableFuture<String> barFuture;
+        try (RedisPipeline pipeline = redisService.pipeline()) {
+            tickFuture = pipeline.evalScript(this.updateRecentTicksScript, ScriptOutputType.BOOLEAN,
+                    new String[] { RedisCache.Key.RECENT_TICKS }, tickArgs);
+            barFuture = pipeline.evalScript(this.updateBarScript, ScriptOutputType.VALUE, barKeys, barArgs);
+        }
+        Boolean tickOk = tickFuture.join();
+        if (tickOk.booleanValue()) {
+            // 保存Tick至数据库:
+            this.quotationDbService.saveTicks(message.ticks);
+        } else {
             logger.warn("ticks are ignored by Redis.");
-            return;
         }
-        // 保存Tick至数据库:
-        this.quotationDbService.saveTicks(message.ticks);
-
-        // 更新各种类型的K线:
-        String strCreatedBars = redisService.executeScriptReturnString(this.shaUpdateBarLua,
-                new String[] { RedisCache.Key.SEC_BARS, RedisCache.Key.MIN_BARS, RedisCache.Key.HOUR_BARS,
-                        RedisCache.Key.DAY_BARS },
-                new String[] { // ARGV
-                        String.valueOf(this.sequenceId), // sequence id
-                        String.valueOf(secStartTime), // sec-start-time
-                        String.valueOf(minStartTime), // min-start-time
-                        String.valueOf(hourStartTime), // hour-start-time
-                        String.valueOf(dayStartTime), // day-start-time
-                        String.valueOf(openPrice), // open
-                        String.valueOf(highPrice), // high
-                        String.valueOf(lowPrice), // low
-                        String.valueOf(closePrice), // close
-                        String.valueOf(quantity) // quantity
-                });
+        // bar脚本按自己记录的sequenceId判断, 与tick脚本的结果无关, 返回的已结束Bar必须保存:
+        String strCreatedBars = barFuture.join();
         logger.info("returned created bars: " + strCreatedBars);
         // 将Redis返回的K线保存至数据库:
         Map<BarType, BigDecimal[]> barMap = JsonUtil.readJson(strCreatedBars, TYPE_BARS);
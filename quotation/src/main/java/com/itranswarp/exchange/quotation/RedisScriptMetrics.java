@@ -0,0 +1,90 @@
+package com.itranswarp.exchange.quotation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.redis.RedisScript;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Export call count, errors, NOSCRIPT reloads and latency of Redis scripts via Micrometer, and log them every interval.
+ *
+ * The max latency is reset by this class only, once per interval, so gauges report the max of the last interval.
+ */
+@Component
+public class RedisScriptMetrics extends LoggerSupport {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${exchange.config.redis-script-metrics-interval:60000}")
+    long interval = 60000;
+
+    final List<RedisScript> scripts = new CopyOnWriteArrayList<>();
+    // 上一周期的最大延迟(毫秒), 供gauge读取:
+    final Map<RedisScript, Double> lastMaxMillis = new ConcurrentHashMap<>();
+
+    ScheduledExecutorService scheduler = null;
+
+    @PostConstruct
+    public void init() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "redis-script-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleAtFixedRate(this::rotate, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    public void register(RedisScript script) {
+        String name = script.getName();
+        FunctionCounter.builder("exchange.redis.script.calls", script, RedisScript::getCount).tag("script", name)
+                .register(this.meterRegistry);
+        FunctionCounter.builder("exchange.redis.script.errors", script, RedisScript::getErrors).tag("script", name)
+                .register(this.meterRegistry);
+        FunctionCounter.builder("exchange.redis.script.reloads", script, RedisScript::getReloads)
+                .tag("script", name).register(this.meterRegistry);
+        Gauge.builder("exchange.redis.script.latency", script, s -> s.getMeanMillis() / 1000).tag("script", name)
+                .tag("quantile", "mean").baseUnit("seconds").register(this.meterRegistry);
+        Gauge.builder("exchange.redis.script.latency", this, m -> m.lastMaxMillis.getOrDefault(script, 0.0) / 1000)
+                .tag("script", name).tag("quantile", "max").baseUnit("seconds").register(this.meterRegistry);
+        this.scripts.add(script);
+    }
+
+    void rotate() {
+        try {
+            for (RedisScript script : this.scripts) {
+                double max = script.getAndResetMaxMillis();
+                this.lastMaxMillis.put(script, max);
+                if (script.getCount() > 0) {
+                    logger.info("{}, max={}ms", script, String.format("%.3f", max));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("rotate redis script metrics failed.", e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+--[[
+根据sequenceId更新秒/分/时/日K线, 并发送bar通知
+
+KEYS:
+  1: 秒K的ZSet
+  2: 分钟K的ZSet
+  3: 小时K的ZSet
+  4: 日K的ZSet
+
+ARGV:
+  1: sequenceId
+  2-5: 秒/分/时/日K的开始时间
+  6-10: open, high, low, close, quantity
+
+每个Bar为JSON数组[startTime, open, high, low, close, quantity], score为startTime.
+
+返回: 已结束的Bar {"SEC":[...],"MIN":[...]}, 已处理过该sequenceId时返回{}
+--]]
+
+local KEY_BAR_SEQ = '_BarSeq_' -- 上次更新的sequenceId
+local TOPIC = 'notification'
+
+local function publish(barType, seqId, bar)
+    redis.call('PUBLISH', TOPIC, '{"type":"bar","resolution":"' .. barType .. '","sequenceId":' .. seqId
+        .. ',"data":' .. cjson.encode(bar) .. '}')
+end
+
+-- 合并至最后一个Bar, 返回已结束的Bar或nil:
+local function tryMergeLast(barType, seqId, zsetBars, startTime, newBar)
+    local poped = redis.call('ZPOPMAX', zsetBars)
+    if #poped == 0 then
+        redis.call('ZADD', zsetBars, startTime, cjson.encode(newBar))
+        publish(barType, seqId, newBar)
+        return nil
+    end
+    local lastBar = cjson.decode(poped[1])
+    local lastStartTime = tonumber(poped[2])
+    if lastStartTime == startTime then
+        -- 同一周期, 合并:
+        lastBar[3] = math.max(lastBar[3], newBar[3])
+        lastBar[4] = math.min(lastBar[4], newBar[4])
+        lastBar[5] = newBar[5]
+        lastBar[6] = lastBar[6] + newBar[6]
+        redis.call('ZADD', zsetBars, lastStartTime, cjson.encode(lastBar))
+        publish(barType, seqId, lastBar)
+        return nil
+    end
+    if lastStartTime < startTime then
+        -- 新周期开始, 上一个Bar已结束:
+        redis.call('ZADD', zsetBars, lastStartTime, poped[1], startTime, cjson.encode(newBar))
+        publish(barType, seqId, newBar)
+        return lastBar
+    end
+    -- 时间倒退, 保留原Bar并忽略:
+    redis.call('ZADD', zsetBars, lastStartTime, poped[1])
+    return nil
+end
+
+local seqId = ARGV[1]
+local lastSeqId = redis.call('GET', KEY_BAR_SEQ)
+if lastSeqId and tonumber(seqId) <= tonumber(lastSeqId) then
+    redis.log(redis.LOG_WARNING, 'sequence ignored: ' .. seqId .. ' <= ' .. lastSeqId)
+    return '{}'
+end
+
+local barTypes = { 'SEC', 'MIN', 'HOUR', 'DAY' }
+local openPrice = tonumber(ARGV[6])
+local highPrice = tonumber(ARGV[7])
+local lowPrice = tonumber(ARGV[8])
+local closePrice = tonumber(ARGV[9])
+local quantity = tonumber(ARGV[10])
+local endedBars = {}
+for i = 1, 4 do
+    local startTime = tonumber(ARGV[i + 1])
+    local bar = tryMergeLast(barTypes[i], seqId, KEYS[i], startTime,
+        { startTime, openPrice, highPrice, lowPrice, closePrice, quantity })
+    if bar then
+        endedBars[barTypes[i]] = bar
+    end
+end
+redis.call('SET', KEY_BAR_SEQ, seqId)
+if next(endedBars) == nil then
+    return '{}'
+end
+return cjson.encode(endedBars)
@@ -0,0 +1,36 @@
+--[[
+根据sequenceId判断是否需要更新最新Ticks并发送tick通知
+
+KEYS:
+  1: 最新Ticks的Key
+
+ARGV:
+  1: sequenceId
+  2: JSON字符串表示的tick数组: "[[...],[...],...]"
+  3: JSON字符串表示的tick字符串数组: "["[...]","[...]",...]"
+
+返回: 已处理过该sequenceId时返回false
+--]]
+
+local KEY_LAST_SEQ = '_TickSeq_' -- 上次更新的sequenceId
+local LIST_RECENT_TICKS = KEYS[1] -- 最新Ticks的Key
+local MAX_TICKS = 100 -- 保存的Tick数量
+
+local seqId = ARGV[1]
+local jsonData = ARGV[2]
+local strData = ARGV[3]
+
+local lastSeqId = redis.call('GET', KEY_LAST_SEQ)
+if lastSeqId and tonumber(seqId) <= tonumber(lastSeqId) then
+    return false
+end
+-- 广播:
+redis.call('PUBLISH', 'notification', '{"type":"tick","sequenceId":' .. seqId .. ',"data":' .. jsonData .. '}')
+redis.call('SET', KEY_LAST_SEQ, seqId)
+-- 追加至最新Tick列表并裁剪:
+local ticks = cjson.decode(strData)
+local len = redis.call('RPUSH', LIST_RECENT_TICKS, unpack(ticks))
+if len > MAX_TICKS then
+    redis.call('LTRIM', LIST_RECENT_TICKS, len - MAX_TICKS, len - 1)
+end
+return true
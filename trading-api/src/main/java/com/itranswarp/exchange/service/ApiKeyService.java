@@ -0,0 +1,175 @@
+package com.itranswarp.exchange.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.ApiError;
+import com.itranswarp.exchange.ApiException;
+import com.itranswarp.exchange.model.ui.ApiKeyAuthEntity;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.support.AbstractDbService;
+import com.itranswarp.exchange.util.ByteUtil;
+import com.itranswarp.exchange.util.HashUtil;
+import com.itranswarp.exchange.util.RandomUtil;
+
+/**
+ * In-memory API key store, loaded at startup and refreshed by the API_KEY_CHANGED topic whose message is the changed
+ * apiKey. createApiKey() and deleteApiKey() publish it; anything else writing api_key_auths must also
+ * PUBLISH api_key_changed {apiKey}, otherwise API nodes keep the old key until restart.
+ *
+ * API-Signature = hex(HmacSHA256(method \n path \n query \n API-Timestamp \n hex(sha256(body)), key=apiSecret))
+ *
+ * A signature is accepted only once: (apiKey, API-Timestamp, API-Signature) is recorded in Redis for all API nodes.
+ * This is the only Redis round trip of API key auth, sent on the shared async connection after the signature is
+ * verified in memory.
+ */
+@Component
+public class ApiKeyService extends AbstractDbService {
+
+    @Autowired
+    RedisService redisService;
+
+    @Value("${exchange.config.api-key-timestamp-window:60000}")
+    long timestampWindow = 60000;
+
+    @Value("${exchange.config.api-key-expires-days:90}")
+    int expiresDays = 90;
+
+    final Map<String, ApiKeyAuthEntity> apiKeys = new ConcurrentHashMap<>();
+
+    final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        // 先订阅再加载, 避免加载期间的变更丢失; 断线期间的变更会丢失, 重连后重新加载全部:
+        this.redisService.subscribe(RedisCache.Topic.API_KEY_CHANGED, this::reload,
+                () -> CompletableFuture.runAsync(this::reloadAll));
+        reloadAll();
+    }
+
+    /**
+     * Load all unexpired API keys from database and remove keys that no longer exist.
+     */
+    void reloadAll() {
+        List<ApiKeyAuthEntity> list = db.from(ApiKeyAuthEntity.class)
+                .where("expiresAt > ?", System.currentTimeMillis()).list();
+        Map<String, ApiKeyAuthEntity> loaded = new HashMap<>(list.size());
+        for (ApiKeyAuthEntity apiKey : list) {
+            loaded.put(apiKey.apiKey, apiKey);
+        }
+        this.apiKeys.keySet().retainAll(loaded.keySet());
+        this.apiKeys.putAll(loaded);
+        logger.info("loaded {} api keys.", this.apiKeys.size());
+    }
+
+    /**
+     * Verify signature and return userId.
+     */
+    public Long verify(String apiKey, String apiSignature, String timestamp, String method, String path,
+            String query, byte[] body) {
+        ApiKeyAuthEntity auth = this.apiKeys.get(apiKey);
+        long now = System.currentTimeMillis();
+        if (auth == null || auth.expiresAt < now) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_FAILED, "API-Key", "Invalid API key.");
+        }
+        if (timestamp == null) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_FAILED, "API-Timestamp", "Missing API timestamp.");
+        }
+        long ts;
+        try {
+            ts = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_FAILED, "API-Timestamp", "Invalid API timestamp.");
+        }
+        if (Math.abs(now - ts) > this.timestampWindow) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_FAILED, "API-Timestamp", "API timestamp expired.");
+        }
+        String payload = method + "\n" + path + "\n" + (query == null ? "" : query) + "\n" + timestamp + "\n"
+                + HashUtil.sha256(body);
+        Mac mac = this.macs.get();
+        try {
+            mac.init(new SecretKeySpec(auth.apiSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] expected = ByteUtil.toHexString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)))
+                .getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, apiSignature.getBytes(StandardCharsets.US_ASCII))) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_FAILED, "API-Signature", "Invalid API signature.");
+        }
+        if (!markSignatureUsed(apiKey, timestamp, apiSignature)) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_FAILED, "API-Signature", "API signature already used.");
+        }
+        return auth.userId;
+    }
+
+    /**
+     * Record the signature for all API nodes, return false if it was already used.
+     */
+    boolean markSignatureUsed(String apiKey, String timestamp, String apiSignature) {
+        // 时间窗口内同一签名只能使用一次, 记录保留到时间戳过期之后:
+        return this.redisService.setIfAbsentAsync(RedisCache.Key.apiSignature(apiKey, timestamp, apiSignature), "1",
+                2 * this.timestampWindow).join();
+    }
+
+    /**
+     * Create a new API key for user. The secret is returned only once.
+     */
+    public ApiKeyAuthEntity createApiKey(Long userId) {
+        ApiKeyAuthEntity auth = new ApiKeyAuthEntity();
+        auth.apiKey = RandomUtil.createRandomString(32);
+        auth.apiSecret = RandomUtil.createRandomString(32);
+        auth.expiresAt = System.currentTimeMillis() + this.expiresDays * 86400_000L;
+        auth.userId = userId;
+        db.insert(auth);
+        this.redisService.publish(RedisCache.Topic.API_KEY_CHANGED, auth.apiKey);
+        logger.info("api key created for user {}: {}", userId, auth.apiKey);
+        return auth;
+    }
+
+    /**
+     * Delete API key of user, and notify all API nodes.
+     */
+    public void deleteApiKey(Long userId, String apiKey) {
+        ApiKeyAuthEntity auth = db.fetch(ApiKeyAuthEntity.class, apiKey);
+        if (auth == null || !auth.userId.equals(userId)) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "apiKey", "API key not found.");
+        }
+        db.delete(auth);
+        this.redisService.publish(RedisCache.Topic.API_KEY_CHANGED, apiKey);
+        logger.info("api key deleted for user {}: {}", userId, apiKey);
+    }
+
+    void reload(String apiKey) {
+        ApiKeyAuthEntity auth = db.fetch(ApiKeyAuthEntity.class, apiKey);
+        if (auth == null || auth.expiresAt < System.currentTimeMillis()) {
+            this.apiKeys.remove(apiKey);
+            logger.info("api key removed: {}", apiKey);
+        } else {
+            this.apiKeys.put(apiKey, auth);
+            logger.info("api key reloaded: {}", apiKey);
+        }
+    }
+}
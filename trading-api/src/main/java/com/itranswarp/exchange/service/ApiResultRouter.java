@@ -0,0 +1,129 @@
+package com.itranswarp.exchange.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itranswarp.exchange.ApiError;
+import com.itranswarp.exchange.ApiErrorResponse;
+import com.itranswarp.exchange.message.ApiResultMessage;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.support.LoggerSupport;
+import com.itranswarp.exchange.util.IpUtil;
+import com.itranswarp.exchange.util.JsonUtil;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+
+/**
+ * Route API results back to the waiting DeferredResult by refId.
+ *
+ * The refId carries the node id of this API node, so trading engine publishes the result to the topic of this node
+ * only. Pending results expire in a hashed timing wheel.
+ */
+@Component
+public class ApiResultRouter extends LoggerSupport {
+
+    @Autowired
+    RedisService redisService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${exchange.config.api-result-timeout:500}")
+    long timeout = 500;
+
+    final String nodeId = IpUtil.getHostId() + "_" + ProcessHandle.current().pid();
+
+    final Map<String, Pending> pendings = new ConcurrentHashMap<>();
+
+    final HashedWheelTimer timer = new HashedWheelTimer(r -> {
+        Thread t = new Thread(r, "api-result-timer");
+        t.setDaemon(true);
+        return t;
+    }, 10, TimeUnit.MILLISECONDS, 512);
+
+    private ResponseEntity<String> timeoutResponse = null;
+
+    @PostConstruct
+    public void init() throws Exception {
+        this.timeoutResponse = new ResponseEntity<>(
+                this.objectMapper.writeValueAsString(new ApiErrorResponse(ApiError.OPERATION_TIMEOUT, null, "")),
+                HttpStatus.BAD_REQUEST);
+        String topic = RedisCache.Topic.tradingApiResult(this.nodeId);
+        logger.info("subscribe api result topic: {}", topic);
+        this.redisService.subscribe(topic, this::onApiResultMessage);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.timer.stop();
+    }
+
+    public String createRefId() {
+        return ApiResultMessage.createRefId(this.nodeId);
+    }
+
+    /**
+     * Create a DeferredResult waiting for the result of refId. Must be called before the event is sent.
+     */
+    public DeferredResult<ResponseEntity<String>> register(String refId) {
+        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>();
+        Timeout expires = this.timer.newTimeout(t -> {
+            Pending pending = this.pendings.remove(refId);
+            if (pending != null) {
+                logger.warn("deferred request refId = {} timeout.", refId);
+                pending.deferred().setResult(this.timeoutResponse);
+            }
+        }, this.timeout, TimeUnit.MILLISECONDS);
+        this.pendings.put(refId, new Pending(deferred, expires));
+        // 客户端断开等情况下也要清理:
+        deferred.onCompletion(() -> {
+            Pending pending = this.pendings.remove(refId);
+            if (pending != null) {
+                pending.expires().cancel();
+            }
+        });
+        return deferred;
+    }
+
+    void onApiResultMessage(String msg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("on subscribed message: {}", msg);
+        }
+        try {
+            ApiResultMessage message = objectMapper.readValue(msg, ApiResultMessage.class);
+            if (message.refId == null) {
+                return;
+            }
+            Pending pending = this.pendings.remove(message.refId);
+            if (pending == null) {
+                return;
+            }
+            pending.expires().cancel();
+            if (message.error != null) {
+                String error = objectMapper.writeValueAsString(message.error);
+                pending.deferred().setResult(new ResponseEntity<>(error, HttpStatus.BAD_REQUEST));
+            } else {
+                pending.deferred().setResult(new ResponseEntity<>(JsonUtil.writeJson(message.result), HttpStatus.OK));
+            }
+        } catch (Exception e) {
+            logger.error("Invalid ApiResultMessage: " + msg, e);
+        }
+    }
+
+    record Pending(DeferredResult<ResponseEntity<String>> deferred, Timeout expires) {
+    }
+}
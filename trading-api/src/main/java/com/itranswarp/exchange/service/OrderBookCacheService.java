@@ -0,0 +1,110 @@
+package com.itranswarp.exchange.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.bean.OrderBookBean;
+import com.itranswarp.exchange.bean.OrderBookDeltaBean;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.support.LoggerSupport;
+import com.itranswarp.exchange.util.JsonUtil;
+
+/**
+ * Holds the latest order book in memory, refreshed by the ORDER_BOOK topic published by trading engine.
+ */
+@Component
+public class OrderBookCacheService extends LoggerSupport {
+
+    // 保留最近的快照用于计算增量:
+    static final int MAX_HISTORY = 64;
+
+    @Autowired
+    RedisService redisService;
+
+    private volatile Snapshot latest = new Snapshot(
+            JsonUtil.readJson(OrderBookBean.EMPTY, OrderBookBean.class), OrderBookBean.EMPTY);
+
+    private final Map<Long, Snapshot> history = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Snapshot> eldest) {
+            return size() > MAX_HISTORY;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+        this.redisService.subscribe(RedisCache.Topic.ORDER_BOOK, this::update);
+        // 订阅后加载一次, 避免启动时没有数据:
+        String data = this.redisService.get(RedisCache.Key.ORDER_BOOK);
+        if (data != null) {
+            update(data);
+        }
+    }
+
+    public Snapshot getLatest() {
+        return this.latest;
+    }
+
+    /**
+     * Get changed levels from the given sequence id to current snapshot as JSON, or null if that snapshot is no
+     * longer cached.
+     */
+    public String getDelta(Snapshot current, long since) {
+        String json = current.deltas().get(since);
+        if (json != null) {
+            return json;
+        }
+        Snapshot from;
+        synchronized (this.history) {
+            from = this.history.get(since);
+        }
+        if (from == null || from.sequenceId() >= current.sequenceId()) {
+            return null;
+        }
+        json = JsonUtil.writeJson(OrderBookDeltaBean.diff(from.orderBook(), current.orderBook()));
+        current.deltas().put(since, json);
+        return json;
+    }
+
+    void update(String json) {
+        OrderBookBean orderBook;
+        try {
+            orderBook = JsonUtil.readJson(json, OrderBookBean.class);
+        } catch (Exception e) {
+            logger.error("invalid order book: " + json, e);
+            return;
+        }
+        synchronized (this.history) {
+            if (orderBook.sequenceId <= this.latest.sequenceId()) {
+                return;
+            }
+            Snapshot snapshot = new Snapshot(orderBook, json);
+            this.history.put(snapshot.sequenceId(), snapshot);
+            this.latest = snapshot;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("order book updated to sequence id {}.", orderBook.sequenceId);
+        }
+    }
+
+    /**
+     * Immutable snapshot with its ETag and the deltas computed against it.
+     */
+    public record Snapshot(OrderBookBean orderBook, String json, String etag, Map<Long, String> deltas) {
+
+        Snapshot(OrderBookBean orderBook, String json) {
+            this(orderBook, json, "\"" + orderBook.sequenceId + "\"", new ConcurrentHashMap<>());
+        }
+
+        public long sequenceId() {
+            return this.orderBook.sequenceId;
+        }
+    }
+}
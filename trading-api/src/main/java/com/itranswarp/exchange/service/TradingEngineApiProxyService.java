@@ -9,6 +9,7 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -52,7 +53,10 @@ import org.springframework.stereotype.Component;
 import com.itranswarp.exchange.ApiError;
 import com.itranswarp.exchange.ApiException;
 import com.itranswarp.exchange.support.LoggerSupport;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -68,6 +72,8 @@ public class TradingEngineApiProxyService extends LoggerSupport {
     private String tradingEngineInternalApiEndpoint;
 
     private OkHttpClient okhttpClient = new OkHttpClient.Builder()
+            // limit concurrent async calls, others are queued without holding a servlet thread:
+            .dispatcher(createDispatcher())
             // set connect timeout:
             .connectTimeout(1, TimeUnit.SECONDS)
             // set read timeout:
@@ -78,21 +84,58 @@ public class TradingEngineApiProxyService extends LoggerSupport {
             .retryOnConnectionFailure(false).build();
 
     public String get(String url) throws IOException {
-        Request request = new Request.Builder().url(tradingEngineInternalApiEndpoint + url).header("Accept", "*/*")
-                .build();
-        try (Response response = okhttpClient.newCall(request).execute()) {
-            if (response.code() != 200) {
-                logger.error("Internal api failed with code {}: {}", Integer.valueOf(response.code()), url);
-                throw new ApiException(ApiError.OPERATION_TIMEOUT, null, "operation timeout.");
+        try (Response response = okhttpClient.newCall(createRequest(url)).execute()) {
+            return readResponse(url, response);
+        }
+    }
+
+    /**
+     * Get without blocking the caller. The future is completed by the OkHttp dispatcher.
+     */
+    public CompletableFuture<String> getAsync(String url) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        okhttpClient.newCall(createRequest(url)).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                logger.error("Internal api failed: " + url, e);
+                future.completeExceptionally(new ApiException(ApiError.OPERATION_TIMEOUT, null, "operation timeout."));
             }
-            try (ResponseBody body = response.body()) {
-                String json = body.string();
-                if (json == null || json.isEmpty()) {
-                    logger.error("Internal api failed with code 200 but empty response: {}", json);
-                    throw new ApiException(ApiError.INTERNAL_SERVER_ERROR, null, "response is empty.");
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(readResponse(url, response));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
                 }
-                return json;
             }
+        });
+        return future;
+    }
+
+    Request createRequest(String url) {
+        return new Request.Builder().url(tradingEngineInternalApiEndpoint + url).header("Accept", "*/*").build();
+    }
+
+    String readResponse(String url, Response response) throws IOException {
+        if (response.code() != 200) {
+            logger.error("Internal api failed with code {}: {}", Integer.valueOf(response.code()), url);
+            throw new ApiException(ApiError.OPERATION_TIMEOUT, null, "operation timeout.");
+        }
+        try (ResponseBody body = response.body()) {
+            String json = body.string();
+            if (json == null || json.isEmpty()) {
+                logger.error("Internal api failed with code 200 but empty response: {}", json);
+                throw new ApiException(ApiError.INTERNAL_SERVER_ERROR, null, "response is empty.");
+            }
+            return json;
         }
     }
+
+    static Dispatcher createDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(20);
+        dispatcher.setMaxRequestsPerHost(20);
+        return dispatcher;
+    }
 }
@@ -0,0 +1,200 @@
+package com.itranswarp.exchange.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+import com.itranswarp.exchange.message.UserStateMessage;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.support.LoggerSupport;
+import com.itranswarp.exchange.util.JsonUtil;
+
+/**
+ * Per-user read model of assets, open orders and pending trigger orders, kept current by the USER_STATE topic published by trading engine.
+ *
+ * Users not seen since startup (or evicted) are loaded from the internal API of trading engine. The whole cache is
+ * dropped when a USER_STATE message was missed or the subscription reconnected, so every user is reloaded on next
+ * access. Cached states do not expire unless a TTL is configured.
+ */
+@Component
+public class UserStateCacheService extends LoggerSupport {
+
+    static final TypeReference<List<UserStateMessage>> TYPE_USER_STATES = new TypeReference<>() {
+    };
+
+    static final TypeReference<List<OrderEntity>> TYPE_ORDERS = new TypeReference<>() {
+    };
+
+    static final TypeReference<List<TriggerOrderBean>> TYPE_TRIGGERS = new TypeReference<>() {
+    };
+
+    @Autowired
+    RedisService redisService;
+
+    @Autowired
+    TradingEngineApiProxyService tradingEngineApiProxyService;
+
+    @Value("${exchange.config.user-state-cache-size:100000}")
+    int maxUsers = 100000;
+
+    // 大于0时超过该时间未更新的用户重新加载, 默认不过期:
+    @Value("${exchange.config.user-state-cache-ttl:0}")
+    long ttl = 0;
+
+    final Map<Long, UserState> states = new ConcurrentHashMap<>();
+
+    // 正在从交易引擎加载的用户, 同一用户只加载一次:
+    final Map<Long, CompletableFuture<UserState>> loading = new ConcurrentHashMap<>();
+
+    // 最后收到的USER_STATE的sequenceId, 仅由订阅线程访问, -1表示尚未收到:
+    long lastSequenceId = -1;
+
+    @PostConstruct
+    public void init() {
+        this.redisService.subscribe(RedisCache.Topic.USER_STATE, this::onUserStates, () -> resync("reconnected"));
+    }
+
+    public CompletableFuture<String> getAssets(Long userId) {
+        return getState(userId).thenApply(UserState::assetsJson);
+    }
+
+    public CompletableFuture<String> getOrders(Long userId) {
+        return getState(userId).thenApply(UserState::ordersJson);
+    }
+
+    public CompletableFuture<String> getTriggers(Long userId) {
+        return getState(userId).thenApply(UserState::triggersJson);
+    }
+
+    /**
+     * Get open order as JSON, or null if not found.
+     */
+    public CompletableFuture<String> getOrder(Long userId, Long orderId) {
+        return getState(userId).thenApply(state -> state.orderJsons().get(orderId));
+    }
+
+    CompletableFuture<UserState> getState(Long userId) {
+        UserState state = this.states.get(userId);
+        if (state != null && (this.ttl <= 0 || System.currentTimeMillis() - state.updatedAt() < this.ttl)) {
+            return CompletableFuture.completedFuture(state);
+        }
+        CompletableFuture<UserState> future = new CompletableFuture<>();
+        CompletableFuture<UserState> exist = this.loading.putIfAbsent(userId, future);
+        if (exist != null) {
+            return exist;
+        }
+        load(userId, state).whenComplete((loaded, e) -> {
+            this.loading.remove(userId, future);
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(loaded);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Load state from trading engine, and replace the stale state unless a newer state was received meanwhile.
+     *
+     * Note that trading engine does not serve /internal/{userId}/assets, orders or triggers yet: its state is only
+     * accessed by the matching thread, so a cold load fails with the error of the proxy until such a read path exists.
+     */
+    CompletableFuture<UserState> load(Long userId, UserState stale) {
+        CompletableFuture<String> assets = this.tradingEngineApiProxyService.getAsync("/internal/" + userId + "/assets");
+        CompletableFuture<String> orders = this.tradingEngineApiProxyService.getAsync("/internal/" + userId + "/orders");
+        CompletableFuture<String> triggers = this.tradingEngineApiProxyService
+                .getAsync("/internal/" + userId + "/triggers");
+        return CompletableFuture.allOf(assets, orders, triggers).thenApply(v -> {
+            UserState loaded = UserState.of(-1, assets.join(), JsonUtil.readJson(orders.join(), TYPE_ORDERS),
+                    JsonUtil.readJson(triggers.join(), TYPE_TRIGGERS));
+            // 加载期间如已收到事件, 以事件为准:
+            UserState current = this.states.compute(userId,
+                    (k, exist) -> exist == null || exist == stale ? loaded : exist);
+            if (current == loaded && stale == null) {
+                evictIfFull();
+            }
+            return current;
+        });
+    }
+
+    void onUserStates(String msg) {
+        List<UserStateMessage> messages;
+        try {
+            messages = JsonUtil.readJson(msg, TYPE_USER_STATES);
+        } catch (Exception e) {
+            logger.error("invalid user state message: " + msg, e);
+            return;
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 同一批次的消息sequenceId相同, 与上一批次不衔接说明丢失了消息:
+        UserStateMessage first = messages.get(0);
+        if (this.lastSequenceId >= 0 && first.previousSequenceId != this.lastSequenceId) {
+            resync("missed user state " + this.lastSequenceId + " -> " + first.previousSequenceId);
+        }
+        this.lastSequenceId = first.sequenceId;
+        for (UserStateMessage message : messages) {
+            UserState state = UserState.of(message.sequenceId, JsonUtil.writeJson(message.assets), message.orders,
+                    message.triggers == null ? List.of() : message.triggers);
+            // 只接受更新的状态:
+            this.states.merge(message.userId, state,
+                    (old, update) -> update.sequenceId() >= old.sequenceId() ? update : old);
+        }
+        evictIfFull();
+    }
+
+    /**
+     * Drop all cached states, and each user is reloaded from trading engine on next access.
+     */
+    void resync(String reason) {
+        logger.warn("drop user state cache: {}", reason);
+        this.states.clear();
+    }
+
+    void evictIfFull() {
+        int n = this.states.size() - this.maxUsers;
+        if (n <= 0) {
+            return;
+        }
+        // 任意移除部分用户, 被移除的用户下次访问时重新加载:
+        Iterator<Long> it = this.states.keySet().iterator();
+        while (n > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+            n--;
+        }
+        logger.info("user state cache is full, evicted some users.");
+    }
+
+    /**
+     * Immutable state of a user with pre-serialized JSON. updatedAt is the time it was received or loaded.
+     */
+    record UserState(long sequenceId, String assetsJson, String ordersJson, Map<Long, String> orderJsons,
+            String triggersJson, long updatedAt) {
+
+        static UserState of(long sequenceId, String assetsJson, List<OrderEntity> orders,
+                List<TriggerOrderBean> triggers) {
+            Map<Long, String> orderJsons = new HashMap<>(orders.size() * 2);
+            for (OrderEntity order : orders) {
+                orderJsons.put(order.id, JsonUtil.writeJson(order));
+            }
+            return new UserState(sequenceId, assetsJson, JsonUtil.writeJson(orders), orderJsons,
+                    JsonUtil.writeJson(triggers), System.currentTimeMillis());
+        }
+    }
+}
@@ -4,6 +4,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.servlet.Filter;
@@ -23,22 +26,43 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.itranswarp.exchange.ApiError;
 import com.itranswarp.exchange.ApiException;
 import com.itranswarp.exchange.bean.AuthToken;
+import com.itranswarp.exchange.bean.AuthTokenVerifier;
 import com.itranswarp.exchange.ctx.UserContext;
 import com.itranswarp.exchange.model.ui.UserProfileEntity;
+import com.itranswarp.exchange.service.ApiKeyService;
 import com.itranswarp.exchange.support.AbstractFilter;
 import com.itranswarp.exchange.user.UserService;
+import com.itranswarp.exchange.util.HashUtil;
 
 @Component
 public class ApiFilterRegistrationBean extends FilterRegistrationBean<Filter> {
+    /**
+     * Request attribute set to the API key if the user is authenticated by API-Key and API-Signature.
+     */
+    public static final String API_KEY_ATTRIBUTE = "exchange.apiKey";
+
     @Autowired
     UserService userService;
 
+    @Autowired
+    ApiKeyService apiKeyService;
+
     @Autowired
     ObjectMapper objectMapper;
     @Value("#{exchangeConfiguration.hmacKey}")
     String hmacKey;
+    @Value("${exchange.config.basic-auth-cache-ttl:60000}")
+    long basicAuthCacheTtl = 60000;
+    @Value("${exchange.config.basic-auth-cache-size:10000}")
+    int basicAuthCacheSize = 10000;
+    @Value("${exchange.config.api-key-max-body-size:65536}")
+    int apiKeyMaxBodySize = 65536;
+    AuthTokenVerifier authTokenVerifier;
+    // sha256(Authorization) -> 已验证的用户, 不缓存明文口令:
+    final Map<String, BasicAuth> basicAuthCache = new ConcurrentHashMap<>();
     @PostConstruct
     public void init(){
+        this.authTokenVerifier = new AuthTokenVerifier(hmacKey);
         ApiFilter filter = new ApiFilter();
         setFilter(filter);
         addUrlPatterns("/api/*");
@@ -56,6 +80,16 @@ public class ApiFilterRegistrationBean extends FilterRegistrationBean<Filter> {
             // set default encoding:
             request.setCharacterEncoding("UTF-8");
             response.setCharacterEncoding("UTF-8");
+            // API Key签名包含body, 先读取body:
+            if (request.getHeader("Authorization") == null && request.getHeader("API-Key") != null) {
+                byte[] body = request.getInputStream().readNBytes(apiKeyMaxBodySize + 1);
+                if (body.length > apiKeyMaxBodySize) {
+                    sendErrorResponse(response,
+                            new ApiException(ApiError.PARAMETER_INVALID, "body", "Request body too large."));
+                    return;
+                }
+                request = new CachedBodyRequestWrapper(request, body);
+            }
             // try parse user:
             Long userId = null;
             try {
@@ -90,6 +124,11 @@ public class ApiFilterRegistrationBean extends FilterRegistrationBean<Filter> {
 
         Long parseUserFromAuthorization(String auth) {
             if (auth.startsWith("Basic ")) {
+                String key = HashUtil.sha256(auth);
+                BasicAuth cached = basicAuthCache.get(key);
+                if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+                    return cached.userId();
+                }
                 String eap = new String(Base64.getDecoder().decode(auth.substring(6)), StandardCharsets.UTF_8);
                 int pos = eap.indexOf(':');
                 if (pos < 1) {
@@ -102,10 +141,11 @@ public class ApiFilterRegistrationBean extends FilterRegistrationBean<Filter> {
                 if (logger.isDebugEnabled()) {
                     logger.debug("parse from basic authorization: {}", userId);
                 }
+                cacheBasicAuth(key, userId);
                 return userId;
             }
             if (auth.startsWith("Bearer ")) {
-                AuthToken token = AuthToken.fromSecureString(auth.substring(7), hmacKey);
+                AuthToken token = authTokenVerifier.verify(auth.substring(7));
                 if (token.isExpired()) {
                     return null;
                 }
@@ -118,8 +158,32 @@ public class ApiFilterRegistrationBean extends FilterRegistrationBean<Filter> {
         }
 
         Long parseUserFromApiKey(String apiKey, String apiSignature, HttpServletRequest request) {
-            // TODO: 验证API-Key, API-Secret并返回userId
-            return null;
+            byte[] body = request instanceof CachedBodyRequestWrapper wrapper ? wrapper.getBody() : new byte[0];
+            Long userId = apiKeyService.verify(apiKey, apiSignature, request.getHeader("API-Timestamp"),
+                    request.getMethod(), request.getRequestURI(), request.getQueryString(), body);
+            // 记录认证方式, 管理API Key等操作不允许使用API Key:
+            request.setAttribute(API_KEY_ATTRIBUTE, apiKey);
+            if (logger.isDebugEnabled()) {
+                logger.debug("parse from api key: {}", userId);
+            }
+            return userId;
+        }
+
+        void cacheBasicAuth(String key, Long userId) {
+            long now = System.currentTimeMillis();
+            if (basicAuthCache.size() >= basicAuthCacheSize) {
+                // 先移除过期的, 仍然过多时全部清除:
+                Iterator<BasicAuth> it = basicAuthCache.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().expiresAt() <= now) {
+                        it.remove();
+                    }
+                }
+                if (basicAuthCache.size() >= basicAuthCacheSize) {
+                    basicAuthCache.clear();
+                }
+            }
+            basicAuthCache.put(key, new BasicAuth(userId, now + basicAuthCacheTtl));
         }
 
         void sendErrorResponse(HttpServletResponse response, ApiException e) throws IOException {
@@ -130,4 +194,7 @@ public class ApiFilterRegistrationBean extends FilterRegistrationBean<Filter> {
             pw.flush();
         }
     }
+
+    record BasicAuth(Long userId, long expiresAt) {
+    }
 }
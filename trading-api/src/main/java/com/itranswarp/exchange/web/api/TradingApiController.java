@@ -1,37 +1,52 @@
 package com.itranswarp.exchange.web.api;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.itranswarp.exchange.ApiError;
-import com.itranswarp.exchange.ApiErrorResponse;
 import com.itranswarp.exchange.ApiException;
-import com.itranswarp.exchange.bean.OrderBookBean;
+import com.itranswarp.exchange.bean.OrderMassCancelBean;
 import com.itranswarp.exchange.bean.OrderRequestBean;
 import com.itranswarp.exchange.bean.SimpleMatchDetailRecord;
+import com.itranswarp.exchange.bean.TriggerOrderRequestBean;
 import com.itranswarp.exchange.ctx.UserContext;
-import com.itranswarp.exchange.message.ApiResultMessage;
+import com.itranswarp.exchange.message.event.OrderBatchEvent;
 import com.itranswarp.exchange.message.event.OrderCancelEvent;
+import com.itranswarp.exchange.message.event.OrderMassCancelEvent;
 import com.itranswarp.exchange.message.event.OrderRequestEvent;
+import com.itranswarp.exchange.message.event.TriggerOrderEvent;
+import com.itranswarp.exchange.model.ui.ApiKeyAuthEntity;
 import com.itranswarp.exchange.model.trade.OrderEntity;
 import com.itranswarp.exchange.redis.RedisCache;
 import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.service.ApiKeyService;
+import com.itranswarp.exchange.service.ApiResultRouter;
 import com.itranswarp.exchange.service.HistoryService;
+import com.itranswarp.exchange.service.OrderBookCacheService;
 import com.itranswarp.exchange.service.SendEventService;
-import com.itranswarp.exchange.service.TradingEngineApiProxyService;
+import com.itranswarp.exchange.service.UserStateCacheService;
 import com.itranswarp.exchange.support.AbstractApiController;
-import com.itranswarp.exchange.util.IdUtil;
-import com.itranswarp.exchange.util.JsonUtil;
+import com.itranswarp.exchange.web.ApiFilterRegistrationBean;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.async.DeferredResult;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 @RequestMapping("/api")
@@ -43,26 +58,42 @@ public class TradingApiController extends AbstractApiController {
     @Autowired
     private RedisService redisService;
     @Autowired
-    ObjectMapper objectMapper;
+    private UserStateCacheService userStateCacheService;
     @Autowired
-    private TradingEngineApiProxyService tradingEngineApiProxyService;
-    private Long asyncTimeout = Long.valueOf(500);
-
-    private String timeoutJson = null;
-
-    Map<String, DeferredResult<ResponseEntity<String>>> deferredResultMap = new ConcurrentHashMap<>();
+    private OrderBookCacheService orderBookCacheService;
+    @Autowired
+    private ApiResultRouter apiResultRouter;
+    @Autowired
+    private ApiKeyService apiKeyService;
+    // 批量下单每次最多的订单数量:
+    @Value("${exchange.config.order-batch-max-size:20}")
+    private int orderBatchMaxSize = 20;
+    // 执行阻塞操作(查询数据库, 发送Kafka)的线程数和等待队列大小, 避免占用OkHttp的回调线程:
+    @Value("${exchange.config.api-blocking-threads:20}")
+    private int blockingThreads = 20;
+    @Value("${exchange.config.api-blocking-queue-size:1000}")
+    private int blockingQueueSize = 1000;
+    private ExecutorService blockingExecutor;
 
-    private String getTimeoutJson() throws IOException {
-        if (timeoutJson == null) {
-            timeoutJson = this.objectMapper
-                    .writeValueAsString(new ApiErrorResponse(ApiError.OPERATION_TIMEOUT, null, ""));
-        }
-        return timeoutJson;
-    }
     @PostConstruct
-    public void init(){
-        this.redisService.subscribe(RedisCache.Topic.TRADING_API_RESULT, this::onApiResultMessage);
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        this.blockingExecutor = new ThreadPoolExecutor(this.blockingThreads, this.blockingThreads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(this.blockingQueueSize), r -> {
+                    Thread t = new Thread(r, "api-blocking-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, (r, executor) -> {
+                    // 队列已满时立即失败, 不阻塞调用线程:
+                    throw new ApiException(ApiError.OPERATION_TIMEOUT, null, "Server is busy.");
+                });
     }
+
+    @PreDestroy
+    public void shutdown() {
+        this.blockingExecutor.shutdown();
+    }
+
     @GetMapping("/timestamp")
     public Map<String, Long> timestamp() {
         return Map.of("timestamp", Long.valueOf(System.currentTimeMillis()));
@@ -70,46 +101,71 @@ public class TradingApiController extends AbstractApiController {
 
     @ResponseBody
     @GetMapping(value = "/assets", produces = "application/json")
-    public String getAssets() throws IOException {
-        return tradingEngineApiProxyService.get("/internal/" + UserContext.getRequiredUserId() + "/assets");
+    public CompletableFuture<String> getAssets() {
+        return userStateCacheService.getAssets(UserContext.getRequiredUserId());
     }
 
     @ResponseBody
     @GetMapping(value = "/orders/{orderId}", produces = "application/json")
-    public String getOpenOrder(@PathVariable("orderId") Long orderId) throws IOException {
-        final Long userId = UserContext.getRequiredUserId();
-        return tradingEngineApiProxyService.get("/internal/" + userId + "/orders/" + orderId);
+    public CompletableFuture<String> getOpenOrder(@PathVariable("orderId") Long orderId) {
+        return userStateCacheService.getOrder(UserContext.getRequiredUserId(), orderId)
+                .thenApply(order -> order == null ? "null" : order);
     }
 
     @ResponseBody
     @GetMapping(value = "/orders", produces = "application/json")
-    public String getOpenOrders() throws IOException {
-        return tradingEngineApiProxyService.get("/internal/" + UserContext.getRequiredUserId() + "/orders");
+    public CompletableFuture<String> getOpenOrders() {
+        return userStateCacheService.getOrders(UserContext.getRequiredUserId());
     }
 
+    /**
+     * Get order book from memory. Supports If-None-Match with ETag of the sequence id, and returns changed levels
+     * only if since=sequenceId is specified and that snapshot is still cached, otherwise the full order book.
+     */
     @ResponseBody
     @GetMapping(value = "/orderBook", produces = "application/json")
-    public String getOrderBook() {
-        String data = redisService.get(RedisCache.Key.ORDER_BOOK);
-        return data == null ? OrderBookBean.EMPTY : data;
+    public ResponseEntity<String> getOrderBook(@RequestParam(value = "since", required = false) Long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        OrderBookCacheService.Snapshot snapshot = orderBookCacheService.getLatest();
+        if (isNotModified(snapshot.etag(), ifNoneMatch)
+                || (since != null && since.longValue() == snapshot.sequenceId())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.etag()).build();
+        }
+        if (since != null) {
+            String delta = orderBookCacheService.getDelta(snapshot, since.longValue());
+            if (delta != null) {
+                return ResponseEntity.ok().eTag(snapshot.etag()).body(delta);
+            }
+        }
+        return ResponseEntity.ok().eTag(snapshot.etag()).body(snapshot.json());
     }
-    @ResponseBody
-    @GetMapping(value = "/ticks", produces = "application/json")
-    public String getRecentTicks() {
-        List<String> data = redisService.lrange(RedisCache.Key.RECENT_TICKS, 0, -1);
-        if (data == null || data.isEmpty()) {
-            return "[]";
+
+    static boolean isNotModified(String etag, String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
         }
-        StringJoiner sj = new StringJoiner(",", "[", "]");
-        for (String t : data) {
-            sj.add(t);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.strip();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
         }
-        return sj.toString();
+        return false;
+    }
+
+    @ResponseBody
+    @GetMapping(value = "/ticks", produces = "application/json")
+    public CompletableFuture<String> getRecentTicks() {
+        return redisService.lrangeAsync(RedisCache.Key.RECENT_TICKS, 0, -1)
+                .thenApply(TradingApiController::toJsonArray);
     }
 
     @ResponseBody
     @GetMapping(value = "/bars/day", produces = "application/json")
-    public String getDayBars() {
+    public CompletableFuture<String> getDayBars() {
         long end = System.currentTimeMillis();
         long start = end - 366 * 86400_000;
         return getBars(RedisCache.Key.HOUR_BARS, start, end);
@@ -117,7 +173,7 @@ public class TradingApiController extends AbstractApiController {
 
     @ResponseBody
     @GetMapping(value = "/bars/hour", produces = "application/json")
-    public String getHourBars() {
+    public CompletableFuture<String> getHourBars() {
         long end = System.currentTimeMillis();
         long start = end - 720 * 3600_000;
         return getBars(RedisCache.Key.HOUR_BARS, start, end);
@@ -125,7 +181,7 @@ public class TradingApiController extends AbstractApiController {
 
     @ResponseBody
     @GetMapping(value = "/bars/min", produces = "application/json")
-    public String getMinBars() {
+    public CompletableFuture<String> getMinBars() {
         long end = System.currentTimeMillis();
         long start = end - 1440 * 60_000;
         return getBars(RedisCache.Key.MIN_BARS, start, end);
@@ -133,14 +189,17 @@ public class TradingApiController extends AbstractApiController {
 
     @ResponseBody
     @GetMapping(value = "/bars/sec", produces = "application/json")
-    public String getSecBars() {
+    public CompletableFuture<String> getSecBars() {
         long end = System.currentTimeMillis();
         long start = end - 3600 * 1_000;
         return getBars(RedisCache.Key.SEC_BARS, start, end);
     }
 
-    private String getBars(String key, long start, long end) {
-        List<String> data = redisService.zrangebyscore(key, start, end);
+    private CompletableFuture<String> getBars(String key, long start, long end) {
+        return redisService.zrangebyscoreAsync(key, start, end).thenApply(TradingApiController::toJsonArray);
+    }
+
+    static String toJsonArray(List<String> data) {
         if (data == null || data.isEmpty()) {
             return "[]";
         }
@@ -151,6 +210,33 @@ public class TradingApiController extends AbstractApiController {
         return sj.toString();
     }
 
+    /**
+     * Create API key. The response contains apiSecret, which cannot be read again.
+     */
+    @PostMapping("/apikeys")
+    public ApiKeyAuthEntity createApiKey(HttpServletRequest request) {
+        final Long userId = UserContext.getRequiredUserId();
+        requireNonApiKeyAuth(request);
+        return apiKeyService.createApiKey(userId);
+    }
+
+    @PostMapping("/apikeys/{apiKey}/delete")
+    public Map<String, Boolean> deleteApiKey(@PathVariable("apiKey") String apiKey, HttpServletRequest request) {
+        final Long userId = UserContext.getRequiredUserId();
+        requireNonApiKeyAuth(request);
+        apiKeyService.deleteApiKey(userId, apiKey);
+        return Map.of("result", Boolean.TRUE);
+    }
+
+    /**
+     * API keys can only be managed by a signed-in user, so a leaked API key cannot create or delete keys.
+     */
+    static void requireNonApiKeyAuth(HttpServletRequest request) {
+        if (request.getAttribute(ApiFilterRegistrationBean.API_KEY_ATTRIBUTE) != null) {
+            throw new ApiException(ApiError.AUTH_SIGNIN_REQUIRED, null, "Cannot manage API keys by API key.");
+        }
+    }
+
     @GetMapping("/history/orders")
     public List<OrderEntity> getHistoryOrders(
             @RequestParam(value = "maxResults", defaultValue = "100") int maxResults) {
@@ -161,42 +247,165 @@ public class TradingApiController extends AbstractApiController {
     }
 
     @GetMapping("/history/orders/{orderId}/matches")
-    public List<SimpleMatchDetailRecord> getOrderMatchDetails(@PathVariable("orderId") Long orderId) throws Exception {
+    public CompletableFuture<List<SimpleMatchDetailRecord>> getOrderMatchDetails(
+            @PathVariable("orderId") Long orderId) {
         final Long userId = UserContext.getRequiredUserId();
         // 查找活动Order:
-        String strOpenOrder = tradingEngineApiProxyService.get("/internal/" + userId + "/orders/" + orderId);
-        if (strOpenOrder.equals("null")) {
-            // 查找历史Order:
-            OrderEntity orderEntity = this.historyService.getHistoryOrder(userId, orderId);
-            if (orderEntity == null) {
-                // Order未找到:
-                throw new ApiException(ApiError.ORDER_NOT_FOUND, orderId.toString(), "Order not found.");
+        // getOrder可能在OkHttp线程完成, 查询数据库切换到blockingExecutor:
+        return userStateCacheService.getOrder(userId, orderId).thenApplyAsync(strOpenOrder -> {
+            if (strOpenOrder == null) {
+                // 查找历史Order:
+                OrderEntity orderEntity = this.historyService.getHistoryOrder(userId, orderId);
+                if (orderEntity == null) {
+                    // Order未找到:
+                    throw new ApiException(ApiError.ORDER_NOT_FOUND, orderId.toString(), "Order not found.");
+                }
             }
-        }
-        return this.historyService.getHistoryMatchDetails(orderId);
+            return this.historyService.getHistoryMatchDetails(orderId);
+        }, this.blockingExecutor);
     }
     @PostMapping(value = "/orders/{orderId}/cancel",produces = "application/json")
     @ResponseBody
-    public DeferredResult<ResponseEntity<String>> cancelOrder(@PathVariable("orderId") Long orderId) throws Exception{
+    public DeferredResult<ResponseEntity<String>> cancelOrder(@PathVariable("orderId") Long orderId) {
         final Long userId = UserContext.getRequiredUserId();
-        String orderStr = tradingEngineApiProxyService.get("/internal/"+userId+"/orders/"+orderId);
-        if(orderStr.equals("null")){
-            throw new ApiException(ApiError.ORDER_NOT_FOUND, orderId.toString(), "Active order not found.");
-        }
-        final String refId = IdUtil.generateUniqueId();
-        var message = new OrderCancelEvent();
-        message.refId=refId;
-        message.refOrderId=orderId;
-        message.userId=userId;
-        message.createdAt=System.currentTimeMillis();
-        ResponseEntity<String> timeout=new ResponseEntity<>(getTimeoutJson(), HttpStatus.BAD_REQUEST);
-        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(this.asyncTimeout, timeout);
-        deferred.onTimeout(() ->{
-            logger.warn("deferred order {} cancel request refId={} timeout.",orderId,refId);
-            this.deferredResultMap.remove(refId);
+        final String refId = apiResultRouter.createRefId();
+        DeferredResult<ResponseEntity<String>> deferred = this.apiResultRouter.register(refId);
+        // 查找活动Order后再发送取消消息, 不占用请求线程:
+        userStateCacheService.getOrder(userId, orderId).whenCompleteAsync((orderStr, err) -> {
+            if (err != null) {
+                deferred.setErrorResult(err instanceof CompletionException && err.getCause() != null
+                        ? err.getCause() : err);
+                return;
+            }
+            if (orderStr == null) {
+                deferred.setErrorResult(
+                        new ApiException(ApiError.ORDER_NOT_FOUND, orderId.toString(), "Active order not found."));
+                return;
+            }
+            var message = new OrderCancelEvent();
+            message.refId = refId;
+            message.refOrderId = orderId;
+            message.userId = userId;
+            message.createdAt = System.currentTimeMillis();
+            this.sendEventService.sendMessage(message);
+        }, this.blockingExecutor).exceptionally(e -> {
+            // blockingExecutor拒绝或发送失败时, 已设置结果的不会被覆盖:
+            deferred.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            return null;
         });
-        this.deferredResultMap.put(refId,deferred);
-        this.sendEventService.sendMessage(message);
+        return deferred;
+    }
+    /**
+     * Cancel all active orders of current user, optionally of one direction and price range, in one event.
+     */
+    @PostMapping(value = "/orders/cancel", produces = "application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<String>> cancelOrders(
+            @RequestBody(required = false) OrderMassCancelBean cancelRequest) {
+        final Long userId = UserContext.getRequiredUserId();
+        if (cancelRequest != null) {
+            cancelRequest.validate();
+        }
+        final String refId = apiResultRouter.createRefId();
+        var event = new OrderMassCancelEvent();
+        event.refId = refId;
+        event.userId = userId;
+        if (cancelRequest != null) {
+            event.direction = cancelRequest.direction;
+            event.minPrice = cancelRequest.minPrice;
+            event.maxPrice = cancelRequest.maxPrice;
+        }
+        event.createdAt = System.currentTimeMillis();
+        DeferredResult<ResponseEntity<String>> deferred = this.apiResultRouter.register(refId);
+        this.sendEventService.sendMessage(event);
+        return deferred;
+    }
+    /**
+     * Create up to order-batch-max-size orders in one event. The result is a list of {order, error} in request order.
+     */
+    @PostMapping(value = "/orders/batch", produces = "application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<String>> createOrders(@RequestBody List<OrderRequestBean> orderRequests) {
+        final Long userId = UserContext.getRequiredUserId();
+        int maxSize = Math.min(this.orderBatchMaxSize, OrderBatchEvent.MAX_ORDERS);
+        if (orderRequests == null || orderRequests.isEmpty() || orderRequests.size() > maxSize) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "orders",
+                    "Number of orders must be between 1 and " + maxSize + ".");
+        }
+        List<OrderBatchEvent.Item> items = new ArrayList<>(orderRequests.size());
+        for (OrderRequestBean orderRequest : orderRequests) {
+            if (orderRequest == null) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "orders", "order is required.");
+            }
+            orderRequest.validate();
+            var item = new OrderBatchEvent.Item();
+            item.direction = orderRequest.direction;
+            item.price = orderRequest.price;
+            item.quantity = orderRequest.quantity;
+            item.type = orderRequest.type;
+            item.timeInForce = orderRequest.timeInForce;
+            items.add(item);
+        }
+        final String refId = apiResultRouter.createRefId();
+        var event = new OrderBatchEvent();
+        event.refId = refId;
+        event.userId = userId;
+        event.orders = items;
+        event.createdAt = System.currentTimeMillis();
+        DeferredResult<ResponseEntity<String>> deferred = this.apiResultRouter.register(refId);
+        this.sendEventService.sendMessage(event);
+        return deferred;
+    }
+    /**
+     * Pending trigger orders of current user.
+     */
+    @GetMapping(value = "/triggers", produces = "application/json")
+    public CompletableFuture<String> getTriggerOrders() {
+        return userStateCacheService.getTriggers(UserContext.getRequiredUserId());
+    }
+
+    /**
+     * Create a stop-loss or take-profit order, which is placed by trading engine when market price reaches the trigger
+     * price. Assets are frozen when it is triggered.
+     */
+    @PostMapping(value = "/triggers", produces = "application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<String>> createTriggerOrder(
+            @RequestBody TriggerOrderRequestBean triggerRequest) {
+        final Long userId = UserContext.getRequiredUserId();
+        triggerRequest.validate();
+        final String refId = apiResultRouter.createRefId();
+        var event = new TriggerOrderEvent();
+        event.refId = refId;
+        event.userId = userId;
+        event.triggerType = triggerRequest.triggerType;
+        event.triggerPrice = triggerRequest.triggerPrice;
+        event.direction = triggerRequest.direction;
+        event.price = triggerRequest.price;
+        event.quantity = triggerRequest.quantity;
+        event.type = triggerRequest.type;
+        event.timeInForce = triggerRequest.timeInForce;
+        event.createdAt = System.currentTimeMillis();
+        DeferredResult<ResponseEntity<String>> deferred = this.apiResultRouter.register(refId);
+        this.sendEventService.sendMessage(event);
+        return deferred;
+    }
+    /**
+     * Cancel a pending trigger order. Trigger orders are only kept by trading engine, so the cancel event is sent
+     * without looking up the user state cache.
+     */
+    @PostMapping(value = "/triggers/{orderId}/cancel", produces = "application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<String>> cancelTriggerOrder(@PathVariable("orderId") Long orderId) {
+        final Long userId = UserContext.getRequiredUserId();
+        final String refId = apiResultRouter.createRefId();
+        var event = new OrderCancelEvent();
+        event.refId = refId;
+        event.refOrderId = orderId;
+        event.userId = userId;
+        event.createdAt = System.currentTimeMillis();
+        DeferredResult<ResponseEntity<String>> deferred = this.apiResultRouter.register(refId);
+        this.sendEventService.sendMessage(event);
         return deferred;
     }
     @PostMapping(value = "/orders", produces = "application/json")
@@ -205,48 +414,20 @@ public class TradingApiController extends AbstractApiController {
             throws IOException {
         final Long userId = UserContext.getRequiredUserId();
         orderRequest.validate();
-        final String refId = IdUtil.generateUniqueId();
+        final String refId = apiResultRouter.createRefId();
         var event = new OrderRequestEvent();
         event.refId = refId;
         event.userId = userId;
         event.direction = orderRequest.direction;
         event.price = orderRequest.price;
         event.quantity = orderRequest.quantity;
+        event.type = orderRequest.type;
+        event.timeInForce = orderRequest.timeInForce;
         event.createdAt = System.currentTimeMillis();
 
-        ResponseEntity<String> timeout = new ResponseEntity<>(getTimeoutJson(), HttpStatus.BAD_REQUEST);
-        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(this.asyncTimeout, timeout);
-        deferred.onTimeout(() -> {
-            logger.warn("deferred order request refId = {} timeout.", event.refId);
-            this.deferredResultMap.remove(event.refId);
-        });
         // track deferred:
-        this.deferredResultMap.put(event.refId, deferred);
+        DeferredResult<ResponseEntity<String>> deferred = this.apiResultRouter.register(refId);
         this.sendEventService.sendMessage(event);
         return deferred;
     }
-    // message callback ///////////////////////////////////////////////////////
-
-    public void onApiResultMessage(String msg) {
-        logger.info("on subscribed message: {}", msg);
-        try {
-            ApiResultMessage message = objectMapper.readValue(msg, ApiResultMessage.class);
-            if (message.refId != null) {
-                DeferredResult<ResponseEntity<String>> deferred = this.deferredResultMap.remove(message.refId);
-                if (deferred != null) {
-                    if (message.error != null) {
-                        String error = objectMapper.writeValueAsString(message.error);
-                        ResponseEntity<String> resp = new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
-                        deferred.setResult(resp);
-                    } else {
-                        ResponseEntity<String> resp = new ResponseEntity<>(JsonUtil.writeJson(message.result),
-                                HttpStatus.OK);
-                        deferred.setResult(resp);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Invalid ApiResultMessage: " + msg, e);
-        }
-    }
 }
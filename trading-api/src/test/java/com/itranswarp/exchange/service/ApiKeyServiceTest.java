@@ -0,0 +1,153 @@
+package com.itranswarp.exchange.service;
+
+import com.itranswarp.exchange.ApiException;
+import com.itranswarp.exchange.model.ui.ApiKeyAuthEntity;
+import com.itranswarp.exchange.util.HashUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApiKeyServiceTest {
+    static final Long USER_A = 12345L;
+    static final String API_KEY = "test-api-key";
+    static final String API_SECRET = "test-api-secret";
+
+    // 已使用的签名, 代替Redis:
+    final Set<String> usedSignatures = new HashSet<>();
+    final List<String> replayChecks = new ArrayList<>();
+    ApiKeyService service;
+
+    @BeforeEach
+    void init() {
+        this.service = new ApiKeyService() {
+            @Override
+            boolean markSignatureUsed(String apiKey, String timestamp, String apiSignature) {
+                String key = apiKey + ":" + timestamp + ":" + apiSignature;
+                replayChecks.add(key);
+                return usedSignatures.add(key);
+            }
+        };
+        this.service.timestampWindow = 60000;
+        this.service.apiKeys.put(API_KEY, createAuth(API_KEY, API_SECRET, System.currentTimeMillis() + 3600_000));
+    }
+
+    @Test
+    void verifyValidSignature() {
+        String ts = String.valueOf(System.currentTimeMillis());
+        byte[] body = bytes("{\"price\":\"100\"}");
+        String sig = sign(API_SECRET, "POST", "/api/orders", "a=1&b=2", ts, body);
+        assertEquals(USER_A, verify(API_KEY, sig, ts, "POST", "/api/orders", "a=1&b=2", body));
+        assertEquals(List.of(API_KEY + ":" + ts + ":" + sig), this.replayChecks);
+    }
+
+    @Test
+    void verifyWithoutQueryAndBody() {
+        String ts = String.valueOf(System.currentTimeMillis());
+        // 无query时签名中为空行:
+        String sig = sign(API_SECRET, "GET", "/api/assets", null, ts, new byte[0]);
+        assertEquals(USER_A, verify(API_KEY, sig, ts, "GET", "/api/assets", null, new byte[0]));
+    }
+
+    @Test
+    void rejectChangedRequest() {
+        String ts = String.valueOf(System.currentTimeMillis());
+        byte[] body = bytes("{\"price\":\"100\"}");
+        String sig = sign(API_SECRET, "POST", "/api/orders", "", ts, body);
+        // 签名覆盖method, path, query, timestamp和body:
+        assertInvalid(API_KEY, sig, ts, "GET", "/api/orders", "", body);
+        assertInvalid(API_KEY, sig, ts, "POST", "/api/orders/batch", "", body);
+        assertInvalid(API_KEY, sig, ts, "POST", "/api/orders", "a=1", body);
+        assertInvalid(API_KEY, sig, String.valueOf(Long.parseLong(ts) + 1), "POST", "/api/orders", "", body);
+        assertInvalid(API_KEY, sig, ts, "POST", "/api/orders", "", bytes("{\"price\":\"101\"}"));
+        assertInvalid(API_KEY, sig.toUpperCase(), ts, "POST", "/api/orders", "", body);
+        // 签名错误时不记录:
+        assertTrue(this.replayChecks.isEmpty());
+        assertEquals(USER_A, verify(API_KEY, sig, ts, "POST", "/api/orders", "", body));
+    }
+
+    @Test
+    void rejectSignatureBySecretOfOtherKey() {
+        this.service.apiKeys.put("other-key",
+                createAuth("other-key", "other-secret", System.currentTimeMillis() + 3600_000));
+        String ts = String.valueOf(System.currentTimeMillis());
+        String sig = sign("other-secret", "GET", "/api/assets", "", ts, new byte[0]);
+        assertInvalid(API_KEY, sig, ts, "GET", "/api/assets", "", new byte[0]);
+    }
+
+    @Test
+    void rejectInvalidApiKey() {
+        String ts = String.valueOf(System.currentTimeMillis());
+        String sig = sign(API_SECRET, "GET", "/api/assets", "", ts, new byte[0]);
+        assertInvalid("unknown-key", sig, ts, "GET", "/api/assets", "", new byte[0]);
+        // 已过期的key:
+        this.service.apiKeys.put(API_KEY, createAuth(API_KEY, API_SECRET, System.currentTimeMillis() - 1000));
+        assertInvalid(API_KEY, sig, ts, "GET", "/api/assets", "", new byte[0]);
+    }
+
+    @Test
+    void rejectTimestampOutOfWindow() {
+        long now = System.currentTimeMillis();
+        assertInvalid(API_KEY, "sig", null, "GET", "/api/assets", "", new byte[0]);
+        assertInvalid(API_KEY, "sig", "abc", "GET", "/api/assets", "", new byte[0]);
+        for (long ts : new long[] { now - 61_000, now + 61_000 }) {
+            String sig = sign(API_SECRET, "GET", "/api/assets", "", String.valueOf(ts), new byte[0]);
+            assertInvalid(API_KEY, sig, String.valueOf(ts), "GET", "/api/assets", "", new byte[0]);
+        }
+        // 窗口内的时间戳允许客户端时钟偏差:
+        for (long ts : new long[] { now - 50_000, now + 50_000 }) {
+            String sig = sign(API_SECRET, "GET", "/api/assets", "", String.valueOf(ts), new byte[0]);
+            assertEquals(USER_A, verify(API_KEY, sig, String.valueOf(ts), "GET", "/api/assets", "", new byte[0]));
+        }
+        assertEquals(2, this.replayChecks.size());
+    }
+
+    @Test
+    void rejectReplayedSignature() {
+        String ts = String.valueOf(System.currentTimeMillis());
+        byte[] body = bytes("{\"price\":\"100\"}");
+        String sig = sign(API_SECRET, "POST", "/api/orders", "", ts, body);
+        assertEquals(USER_A, verify(API_KEY, sig, ts, "POST", "/api/orders", "", body));
+        assertInvalid(API_KEY, sig, ts, "POST", "/api/orders", "", body);
+        // 新的时间戳产生新的签名:
+        String ts2 = String.valueOf(Long.parseLong(ts) + 1);
+        String sig2 = sign(API_SECRET, "POST", "/api/orders", "", ts2, body);
+        assertEquals(USER_A, verify(API_KEY, sig2, ts2, "POST", "/api/orders", "", body));
+    }
+
+    Long verify(String apiKey, String sig, String ts, String method, String path, String query, byte[] body) {
+        return this.service.verify(apiKey, sig, ts, method, path, query, body);
+    }
+
+    void assertInvalid(String apiKey, String sig, String ts, String method, String path, String query,
+            byte[] body) {
+        assertThrows(ApiException.class, () -> verify(apiKey, sig, ts, method, path, query, body));
+    }
+
+    static String sign(String secret, String method, String path, String query, String ts, byte[] body) {
+        String payload = method + "\n" + path + "\n" + (query == null ? "" : query) + "\n" + ts + "\n"
+                + HashUtil.sha256(body);
+        return HashUtil.hmacSha256(payload, secret);
+    }
+
+    static ApiKeyAuthEntity createAuth(String apiKey, String apiSecret, long expiresAt) {
+        ApiKeyAuthEntity auth = new ApiKeyAuthEntity();
+        auth.apiKey = apiKey;
+        auth.apiSecret = apiSecret;
+        auth.expiresAt = expiresAt;
+        auth.userId = USER_A;
+        return auth;
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
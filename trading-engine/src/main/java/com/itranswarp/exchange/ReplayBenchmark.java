@@ -0,0 +1,251 @@
+package com.itranswarp.exchange;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.HdrHistogram.Histogram;
+
+import com.itranswarp.exchange.assets.Asset;
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+import com.itranswarp.exchange.clearing.ClearingService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.invariant.InvariantChecker;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.messaging.MessageTypes;
+import com.itranswarp.exchange.metrics.EngineMetrics;
+import com.itranswarp.exchange.model.support.EntitySupport;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.store.StoreService;
+import com.itranswarp.exchange.trigger.TriggerService;
+
+/**
+ * Replay recorded events through TradingEngineService.processEvent at full speed without Kafka, Redis or MySQL, and
+ * report throughput, per-event latency and a hash of the final engine state.
+ *
+ * Input is a text file of events starting from the first event (previousId = 0), one per line in MessageTypes format
+ * "className#json", or an export of the events table where data is the last tab-separated column, e.g.:
+ *
+ * mysql -B --raw -e "SELECT sequenceId, data FROM events ORDER BY sequenceId" exchange > events.tsv
+ *
+ * Run from the packaged jar:
+ *
+ * java -cp trading-engine.jar -Dloader.main=com.itranswarp.exchange.ReplayBenchmark
+ * org.springframework.boot.loader.PropertiesLauncher events.tsv --runs=3 --batch=100
+ *
+ * Options: --runs=N replays N times on fresh engines and requires the same state hash each time; --batch=N ends a
+ * batch every N events to include notification building (0 = never); --expect=HASH fails if the final hash differs,
+ * e.g. the hash printed before an engine change; --zone=ZONE is the time zone of order ids (default UTC), which must
+ * match the engine that recorded the events, otherwise ids and the hash differ between machines.
+ *
+ * The replay fails if the incremental or the background full invariant check finds a violation.
+ */
+public class ReplayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println(
+                    "Usage: ReplayBenchmark <events-file> [--runs=N] [--batch=N] [--expect=HASH] [--zone=ZONE]");
+            System.exit(2);
+        }
+        int runs = 1;
+        int batch = 100;
+        String expect = null;
+        ZoneId zoneId = ZoneId.of("UTC");
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--batch=")) {
+                batch = Integer.parseInt(arg.substring(8));
+            } else if (arg.startsWith("--expect=")) {
+                expect = arg.substring(9);
+            } else if (arg.startsWith("--zone=")) {
+                zoneId = ZoneId.of(arg.substring(7));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        List<AbstractEvent> events = loadEvents(Path.of(args[0]));
+        if (events.isEmpty()) {
+            System.err.println("No event found.");
+            System.exit(2);
+        }
+        if (events.get(0).previousId != 0) {
+            System.err.println("Events must start from the first event, but previousId = " + events.get(0).previousId);
+            System.exit(2);
+        }
+        System.out.printf("loaded %d events: %d -> %d%n", events.size(), events.get(0).sequenceId,
+                events.get(events.size() - 1).sequenceId);
+        String firstHash = null;
+        for (int run = 1; run <= runs; run++) {
+            String hash = new ReplayBenchmark(zoneId).replay(run, events, batch);
+            if (firstHash == null) {
+                firstHash = hash;
+            } else if (!firstHash.equals(hash)) {
+                System.err.println("NOT DETERMINISTIC: run " + run + " hash " + hash + " != " + firstHash);
+                System.exit(1);
+            }
+        }
+        if (expect != null && !expect.equals(firstHash)) {
+            System.err.println("STATE CHANGED: hash " + firstHash + " != expected " + expect);
+            System.exit(1);
+        }
+        System.out.println("state hash: " + firstHash);
+        System.exit(0);
+    }
+
+    /**
+     * Read events in MessageTypes format. Parsing is done before replay so it is not measured.
+     */
+    static List<AbstractEvent> loadEvents(Path file) throws IOException {
+        MessageTypes messageTypes = new MessageTypes();
+        messageTypes.init();
+        List<AbstractEvent> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 导出的events表取最后一列data:
+                int tab = line.lastIndexOf('\t');
+                String data = tab >= 0 ? line.substring(tab + 1) : line;
+                // 跳过空行和表头:
+                if (data.isBlank() || data.indexOf('#') == -1) {
+                    continue;
+                }
+                events.add((AbstractEvent) messageTypes.deserialize(data));
+            }
+        }
+        return events;
+    }
+
+    final AssetService assetService = new AssetService();
+    final OrderService orderService = new OrderService(assetService);
+    final MatchEngine matchEngine = new MatchEngine();
+    final ClearingService clearingService = new ClearingService(assetService, orderService);
+    final TriggerService triggerService = new TriggerService();
+    final InvariantChecker invariantChecker = new InvariantChecker(assetService, orderService, matchEngine);
+    final TradingEngineService engine = new TradingEngineService();
+    final AtomicReference<String> violation = new AtomicReference<>();
+
+    ReplayBenchmark(ZoneId zoneId) {
+        this.invariantChecker.init();
+        this.invariantChecker.setViolationHandler(this.violation::set);
+        this.engine.assetService = this.assetService;
+        this.engine.orderService = this.orderService;
+        this.engine.matchEngine = this.matchEngine;
+        this.engine.clearingService = this.clearingService;
+        this.engine.triggerService = this.triggerService;
+        this.engine.invariantChecker = this.invariantChecker;
+        // 订单id包含年月, 使用固定时区保证不同机器结果一致:
+        this.engine.zoneId = zoneId;
+        // 不启动周期统计, 只记录:
+        this.engine.engineMetrics = new EngineMetrics();
+        this.engine.storeService = new StoreService() {
+            @Override
+            public List<AbstractEvent> loadEventsFromDb(long fromSequenceId, long toSequenceId, int limit) {
+                return List.of();
+            }
+
+            @Override
+            public void insertIgnore(List<? extends EntitySupport> list) {
+            }
+        };
+    }
+
+    String replay(int run, List<AbstractEvent> events, int batch) throws InterruptedException {
+        Histogram latency = new Histogram(3);
+        long start = System.nanoTime();
+        int n = 0;
+        for (AbstractEvent event : events) {
+            long t = System.nanoTime();
+            this.engine.processEvent(event);
+            if (batch > 0 && ++n % batch == 0) {
+                this.engine.endBatchAndDiscard();
+            }
+            latency.recordValue(System.nanoTime() - t);
+        }
+        this.engine.endBatchAndDiscard();
+        long elapsed = System.nanoTime() - start;
+        // 等待最后一次全量校验完成:
+        if (!this.invariantChecker.awaitTermination(1, TimeUnit.MINUTES)) {
+            System.err.println("invariant full check not finished.");
+            System.exit(1);
+        }
+        if (this.violation.get() != null) {
+            System.err.println("invariant violated: " + this.violation.get());
+            System.exit(1);
+        }
+        System.out.printf("run %d: %d events in %d ms, %.0f events/s, latency us p50=%.1f p99=%.1f p999=%.1f max=%.1f%n",
+                run, events.size(), elapsed / 1_000_000, events.size() * 1e9 / elapsed,
+                latency.getValueAtPercentile(50.0) / 1e3, latency.getValueAtPercentile(99.0) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMaxValue() / 1e3);
+        return stateHash();
+    }
+
+    /**
+     * SHA-256 of assets, active orders, market price and pending trigger orders, each sorted by id.
+     */
+    String stateHash() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder(256);
+        for (var userEntry : new TreeMap<>(this.assetService.getUserAssets()).entrySet()) {
+            for (Map.Entry<AssetEnum, Asset> entry : new TreeMap<>(userEntry.getValue()).entrySet()) {
+                Asset asset = entry.getValue();
+                sb.setLength(0);
+                sb.append("A").append(userEntry.getKey()).append(',').append(entry.getKey()).append(',')
+                        .append(plain(asset.getAvailable())).append(',').append(plain(asset.getFrozen())).append('\n');
+                md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        List<OrderEntity> orders = new ArrayList<>(this.orderService.getActiveOrders().values());
+        Collections.sort(orders);
+        for (OrderEntity order : orders) {
+            sb.setLength(0);
+            sb.append("O").append(order.id).append(',').append(order.sequenceId).append(',').append(order.userId)
+                    .append(',').append(order.direction).append(',').append(plain(order.price)).append(',')
+                    .append(plain(order.unfilledQuantity)).append(',').append(order.status).append('\n');
+            md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        List<TriggerOrderBean> triggers = this.triggerService.getTriggerOrders();
+        triggers.sort(Comparator.comparingLong(t -> t.id));
+        for (TriggerOrderBean trigger : triggers) {
+            sb.setLength(0);
+            sb.append("T").append(trigger.id).append(',').append(trigger.sequenceId).append(',')
+                    .append(trigger.userId).append(',').append(trigger.triggerType).append(',')
+                    .append(plain(trigger.triggerPrice)).append(',').append(trigger.direction).append(',')
+                    .append(plain(trigger.price)).append(',').append(plain(trigger.quantity)).append('\n');
+            md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        sb.setLength(0);
+        sb.append("M").append(plain(this.matchEngine.marketPrice)).append(',').append(this.matchEngine.sequenceId);
+        md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    static String plain(BigDecimal value) {
+        return value.stripTrailingZeros().toPlainString();
+    }
+}
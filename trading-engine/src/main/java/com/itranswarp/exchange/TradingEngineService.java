@@ -2,25 +2,61 @@ package com.itranswarp.exchange;
 
 import com.itranswarp.exchange.assets.Asset;
 import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.assets.Transfer;
+import com.itranswarp.exchange.bean.AssetBean;
 import com.itranswarp.exchange.bean.OrderBookBean;
+import com.itranswarp.exchange.bean.OrderBookDeltaBean;
+import com.itranswarp.exchange.bean.OrderResultBean;
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+import com.itranswarp.exchange.bean.UserUpdateBean;
 import com.itranswarp.exchange.clearing.ClearingService;
 import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 import com.itranswarp.exchange.enums.UserType;
 import com.itranswarp.exchange.match.MatchDetailRecord;
 import com.itranswarp.exchange.match.MatchEngine;
 import com.itranswarp.exchange.match.MatchResult;
+import com.itranswarp.exchange.message.ApiResultMessage;
+import com.itranswarp.exchange.message.NotificationMessage;
+import com.itranswarp.exchange.message.UserStateMessage;
 import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.OrderBatchEvent;
 import com.itranswarp.exchange.message.event.OrderCancelEvent;
+import com.itranswarp.exchange.message.event.OrderMassCancelEvent;
 import com.itranswarp.exchange.message.event.OrderRequestEvent;
 import com.itranswarp.exchange.message.event.TransferEvent;
+import com.itranswarp.exchange.message.event.TriggerOrderEvent;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.invariant.InvariantChecker;
+import com.itranswarp.exchange.metrics.EngineMetrics;
+import com.itranswarp.exchange.messaging.MessageConsumer;
+import com.itranswarp.exchange.messaging.Messaging;
+import com.itranswarp.exchange.messaging.MessagingFactory;
 import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.order.UserOrders;
+import com.itranswarp.exchange.pipeline.EventProcessor;
+import com.itranswarp.exchange.pipeline.EventRing;
+import com.itranswarp.exchange.pipeline.EventSlot;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisPipeline;
+import com.itranswarp.exchange.redis.RedisService;
 import com.itranswarp.exchange.store.StoreService;
 import com.itranswarp.exchange.support.LoggerSupport;
+import com.itranswarp.exchange.trigger.TriggerService;
+import com.itranswarp.exchange.util.IpUtil;
+import com.itranswarp.exchange.util.JsonUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.Map.Entry;
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -29,8 +65,6 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 
 @Component
@@ -39,12 +73,38 @@ public class TradingEngineService extends LoggerSupport {
     int orderBookDepth=100;
     @Value("#{exchangeConfiguration.debugMode}")
     boolean debugMode = false;
+    @Value("${exchange.config.notification-shards:64}")
+    int notificationShards = 64;
+    // ring大小, 必须是2的幂:
+    @Value("${exchange.config.engine-ring-size:65536}")
+    int ringSize = 65536;
+    // 从数据库恢复丢失事件时每页加载的数量:
+    @Value("${exchange.config.event-recovery-page-size:1000}")
+    int recoveryPageSize = 1000;
+    // 持久化和通知阶段写入失败时的重试次数, 仍失败则panic:
+    @Value("${exchange.config.engine-output-retries:5}")
+    int outputRetries = 5;
     private long lastSequenceId = 0;
     private OrderBookBean latestOrderBook = null;
-    private Queue<List<OrderEntity>> orderQueue = new ConcurrentLinkedQueue<>();
+    // 本事件结束的订单, 由匹配阶段移入ring交给持久化阶段:
+    private final List<OrderEntity> closedOrders = new ArrayList<>();
+    // 持久化阶段累积的订单, 仅由持久化线程访问:
+    private final List<OrderEntity> ordersToSave = new ArrayList<>();
     private boolean orderBookChanged = false;
-
-    boolean fatalError = false;
+    private final List<ApiResultMessage> apiResults = new ArrayList<>();
+    // 本批次资产或订单发生变化的用户:
+    private final Set<Long> changedUsers = new LinkedHashSet<>();
+    // 本批次发生变化的订单 userId -> (orderId -> order), 同一订单只保留批次结束时的状态:
+    private final Map<Long, Map<Long, OrderEntity>> changedOrders = new HashMap<>();
+    // 本批次发生变化的触发订单 userId -> (id -> trigger):
+    private final Map<Long, Map<Long, TriggerOrderBean>> changedTriggers = new HashMap<>();
+    // 本批次待发送的消息(topic, data), 批次结束时一次pipeline发送:
+    private final List<Map.Entry<String, String>> pendingMessages = new ArrayList<>();
+    private String pendingOrderBook = null;
+    // 上一次发送USER_STATE时的sequenceId, API节点据此发现丢失的消息:
+    private long lastUserStateSequenceId = 0;
+
+    volatile boolean fatalError = false;
     @Autowired
     AssetService assetService;
     @Autowired
@@ -55,19 +115,283 @@ public class TradingEngineService extends LoggerSupport {
     ClearingService clearingService;
     @Autowired
     StoreService storeService;
+    @Autowired
+    RedisService redisService;
+    @Autowired
+    MessagingFactory messagingFactory;
+    @Autowired
+    EngineMetrics engineMetrics;
+    @Autowired
+    InvariantChecker invariantChecker;
+    @Autowired
+    TriggerService triggerService;
     @Autowired(required = false)
     ZoneId zoneId = ZoneId.systemDefault();
+
+    private MessageConsumer consumer;
+    private EventRing<EventSlot> ring;
+    private EventProcessor<EventSlot> matchingStage;
+    private EventProcessor<EventSlot> persistenceStage;
+    private EventProcessor<EventSlot> notificationStage;
+
+    /**
+     * Kafka consumer -> ring -> matching (single writer of engine state) -> persistence and notification. Each stage
+     * runs on its own thread and follows the sequence of its upstream stage.
+     */
+    @PostConstruct
+    public void init() {
+        this.invariantChecker.setViolationHandler(error -> {
+            logger.error("full invariant check failed: {}", error);
+            panic();
+        });
+        this.ring = new EventRing<>(this.ringSize, EventSlot::new);
+        this.matchingStage = new EventProcessor<>("engine-matching", this.ring, this::onMatchingEvent);
+        this.persistenceStage = new EventProcessor<>("engine-persistence", this.ring, this::onPersistenceEvent,
+                this.matchingStage.getSequence());
+        this.notificationStage = new EventProcessor<>("engine-notification", this.ring, this::onNotificationEvent,
+                this.matchingStage.getSequence());
+        this.ring.setGatingSequences(this.persistenceStage.getSequence(), this.notificationStage.getSequence());
+        // 任一阶段失败后引擎不能继续:
+        EventProcessor.FailureHandler failureHandler = (stage, sequence, e) -> panic();
+        this.matchingStage.setFailureHandler(failureHandler);
+        this.persistenceStage.setFailureHandler(failureHandler);
+        this.notificationStage.setFailureHandler(failureHandler);
+        this.notificationStage.start();
+        this.persistenceStage.start();
+        this.matchingStage.start();
+        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, IpUtil.getHostId(),
+                this::publishEvents);
+        logger.info("engine pipeline started with ring size {}.", this.ringSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.consumer != null) {
+            this.consumer.stop();
+            this.consumer = null;
+        }
+        if (this.matchingStage != null) {
+            this.matchingStage.halt();
+            this.persistenceStage.halt();
+            this.notificationStage.halt();
+        }
+    }
+
+    /**
+     * Called by Kafka listener thread: write events into the ring, waiting if the ring is full.
+     */
+    void publishEvents(List<AbstractEvent> events) {
+        for (AbstractEvent event : events) {
+            long sequence = this.ring.next();
+            EventSlot slot = this.ring.get(sequence);
+            slot.reset(event);
+            slot.publishedNanos = System.nanoTime();
+            this.ring.publish(sequence);
+        }
+    }
+
+    void onMatchingEvent(EventSlot slot, long sequence, boolean endOfBatch) {
+        this.engineMetrics.recordQueueWait(System.nanoTime() - slot.publishedNanos);
+        try {
+            processEvent(slot.event);
+            slot.closedOrders.addAll(this.closedOrders);
+            this.closedOrders.clear();
+            if (endOfBatch) {
+                // 当前没有更多事件, 结束本批次并将整批输出交给通知阶段:
+                endBatch();
+                slot.orderBook = this.pendingOrderBook;
+                slot.messages.addAll(this.pendingMessages);
+                this.pendingOrderBook = null;
+                this.pendingMessages.clear();
+            }
+        } catch (RuntimeException e) {
+            // 引擎状态可能已不一致:
+            logger.error("process event failed: " + slot.event, e);
+            panic();
+        }
+    }
+
+    void onPersistenceEvent(EventSlot slot, long sequence, boolean endOfBatch) {
+        this.ordersToSave.addAll(slot.closedOrders);
+        if (endOfBatch && !this.ordersToSave.isEmpty()) {
+            // insertIgnore可安全重试, 成功后才清空:
+            retryOutput("save orders", () -> saveOrders(this.ordersToSave));
+            this.ordersToSave.clear();
+        }
+    }
+
+    void onNotificationEvent(EventSlot slot, long sequence, boolean endOfBatch) {
+        // 重试可能重复发送部分消息, 但不会丢失:
+        retryOutput("flush redis", () -> flushRedis(slot.orderBook, slot.messages));
+    }
+
+    /**
+     * Retry output of persistence and notification stages, and rethrow if still failed so the stage stops at this
+     * event and the engine panics instead of dropping the output.
+     */
+    void retryOutput(String name, Runnable output) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                output.run();
+                return;
+            } catch (RuntimeException e) {
+                if (attempt > this.outputRetries) {
+                    throw e;
+                }
+                logger.warn("{} failed, retry {}/{}: {}", name, attempt, this.outputRetries, e.getMessage());
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Process events synchronously on the caller thread without the pipeline.
+     */
     void processMessage(List<AbstractEvent> messages){
-        /*for (AbstractEvent message : messages){
-            processEvent(message);
-        }*/
-        this.orderBookChanged = false;
         for (AbstractEvent message : messages) {
             processEvent(message);
         }
+        endBatch();
+        flushRedis(this.pendingOrderBook, this.pendingMessages);
+        this.pendingOrderBook = null;
+        this.pendingMessages.clear();
+        if (!this.closedOrders.isEmpty()) {
+            saveOrders(this.closedOrders);
+            this.closedOrders.clear();
+        }
+    }
+
+    /**
+     * End batch and drop the output, for replay without Redis and database.
+     */
+    void endBatchAndDiscard() {
+        endBatch();
+        this.pendingOrderBook = null;
+        this.pendingMessages.clear();
+        this.closedOrders.clear();
+    }
+
+    void endBatch() {
         if (this.orderBookChanged) {
             // 获取最新的OrderBook快照:
+            OrderBookBean previous = this.latestOrderBook;
             this.latestOrderBook = this.matchEngine.getOrderBook(this.orderBookDepth);
+            publishOrderBook(previous);
+            this.orderBookChanged = false;
+        }
+        publishUserStates();
+        publishApiResults();
+        this.engineMetrics.updateCounts(this.matchEngine.buyBook.size(), this.matchEngine.sellBook.size(),
+                this.orderService.getActiveOrders().size(), this.triggerService.size());
+    }
+
+    /**
+     * Write order book and all messages of a batch in one pipeline. Wait for replies so the messages of the next
+     * batch cannot overtake this batch.
+     */
+    void flushRedis(String orderBook, List<Map.Entry<String, String>> messages) {
+        if (orderBook == null && messages.isEmpty()) {
+            return;
+        }
+        try (RedisPipeline pipeline = this.redisService.pipeline()) {
+            if (orderBook != null) {
+                pipeline.set(RedisCache.Key.ORDER_BOOK, orderBook);
+            }
+            for (Map.Entry<String, String> message : messages) {
+                pipeline.publish(message.getKey(), message.getValue());
+            }
+            pipeline.sync();
+        }
+    }
+
+    void publish(String topic, String data) {
+        this.pendingMessages.add(Map.entry(topic, data));
+    }
+
+    void publishUserStates() {
+        if (this.changedUsers.isEmpty()) {
+            return;
+        }
+        // 每个用户发送完整的资产和活动订单, API节点直接替换本地状态, 整批只发送一次:
+        List<UserStateMessage> states = new ArrayList<>(this.changedUsers.size());
+        long now = System.currentTimeMillis();
+        for (Long userId : this.changedUsers) {
+            UserStateMessage state = getUserState(userId);
+            state.previousSequenceId = this.lastUserStateSequenceId;
+            states.add(state);
+            // 每个用户合并为一条推送消息, 包含本批次变化的订单和最新资产:
+            Map<Long, OrderEntity> orders = this.changedOrders.get(userId);
+            Map<Long, TriggerOrderBean> triggers = this.changedTriggers.get(userId);
+            var msg = new NotificationMessage();
+            msg.type = "user_update";
+            msg.userId = userId;
+            msg.createdAt = now;
+            msg.data = new UserUpdateBean(orders == null ? List.of() : new ArrayList<>(orders.values()),
+                    triggers == null ? List.of() : new ArrayList<>(triggers.values()), state.assets);
+            publish(RedisCache.Topic.notification(userId, this.notificationShards), JsonUtil.writeJson(msg));
+        }
+        this.changedUsers.clear();
+        this.changedOrders.clear();
+        this.changedTriggers.clear();
+        publish(RedisCache.Topic.USER_STATE, JsonUtil.writeJson(states));
+        this.lastUserStateSequenceId = this.lastSequenceId;
+    }
+
+    void addChangedOrder(OrderEntity order) {
+        this.invariantChecker.touchOrder(order);
+        this.changedUsers.add(order.userId);
+        this.changedOrders.computeIfAbsent(order.userId, k -> new LinkedHashMap<>()).put(order.id, order);
+    }
+
+    void addChangedTrigger(TriggerOrderBean trigger) {
+        this.changedUsers.add(trigger.userId);
+        this.changedTriggers.computeIfAbsent(trigger.userId, k -> new LinkedHashMap<>()).put(trigger.id, trigger);
+    }
+
+    UserStateMessage getUserState(Long userId) {
+        var state = new UserStateMessage();
+        state.sequenceId = this.lastSequenceId;
+        state.userId = userId;
+        state.createdAt = System.currentTimeMillis();
+        state.assets = new HashMap<>();
+        Map<AssetEnum, Asset> assets = this.assetService.getAssets(userId);
+        if (assets != null) {
+            for (Entry<AssetEnum, Asset> entry : assets.entrySet()) {
+                Asset asset = entry.getValue();
+                state.assets.put(entry.getKey(), new AssetBean(asset.getAvailable(), asset.getFrozen()));
+            }
+        }
+        UserOrders orders = this.orderService.getUserOrders(userId);
+        state.orders = orders == null ? List.of() : orders.toList();
+        state.triggers = this.triggerService.getUserTriggerOrders(userId);
+        return state;
+    }
+
+    void publishApiResults() {
+        // 按refId中的API节点发送至对应的topic:
+        for (ApiResultMessage result : this.apiResults) {
+            publish(ApiResultMessage.topicOf(result.refId), JsonUtil.writeJson(result));
+        }
+        this.apiResults.clear();
+    }
+
+    void publishOrderBook(OrderBookBean previous) {
+        // 写入Redis供冷启动读取, 并通知API节点和push节点刷新内存中的快照:
+        String json = JsonUtil.writeJson(this.latestOrderBook);
+        this.pendingOrderBook = json;
+        publish(RedisCache.Topic.ORDER_BOOK, json);
+        if (previous != null) {
+            // 推送相对上一快照变化的价格档位:
+            var msg = new NotificationMessage();
+            msg.type = "orderbook_delta";
+            msg.createdAt = System.currentTimeMillis();
+            msg.data = OrderBookDeltaBean.diff(previous, this.latestOrderBook);
+            publish(RedisCache.Topic.NOTIFICATION, JsonUtil.writeJson(msg));
         }
     }
     private void panic() {
@@ -79,23 +403,16 @@ public class TradingEngineService extends LoggerSupport {
         if(this.fatalError){
             return;
         }
-        if(event.sequenceId<this.lastSequenceId){
+        if(event.sequenceId<=this.lastSequenceId){
             logger.warn("skip duplicate event: {}", event);
             return;
         }
         if(event.previousId>this.lastSequenceId){
             logger.warn("event lost: expected previous id {} but actual {} for event {}", this.lastSequenceId,
                     event.previousId, event);
-            var events = this.storeService.loadEventsFromDb(this.lastSequenceId);
-            if(events.isEmpty()){
-                logger.error("cannot load lost event from db.");
-                panic();
+            if (!recoverLostEvents(event.previousId)) {
                 return;
             }
-            for (var e : events){
-                this.processEvent(e);
-            }
-            return;
         }
         if (event.previousId != lastSequenceId) {
             logger.error("bad event: expected previous id {} but actual {} for event: {}", this.lastSequenceId,
@@ -103,17 +420,68 @@ public class TradingEngineService extends LoggerSupport {
             panic();
             return;
         }
+        applyEvent(event);
+    }
+
+    /**
+     * Load only the lost window (lastSequenceId, previousId] from db page by page and apply in order without
+     * recursion, so the current event can be processed afterwards.
+     */
+    boolean recoverLostEvents(long previousId) {
+        while (this.lastSequenceId < previousId) {
+            List<AbstractEvent> events = this.storeService.loadEventsFromDb(this.lastSequenceId, previousId,
+                    this.recoveryPageSize);
+            if (events.isEmpty()) {
+                logger.error("cannot load lost events ({}, {}] from db.", this.lastSequenceId, previousId);
+                panic();
+                return false;
+            }
+            for (AbstractEvent e : events) {
+                if (e.previousId != this.lastSequenceId) {
+                    logger.error("bad event loaded from db: expected previous id {} but actual {} for event: {}",
+                            this.lastSequenceId, e.previousId, e);
+                    panic();
+                    return false;
+                }
+                applyEvent(e);
+                if (this.fatalError) {
+                    return false;
+                }
+            }
+        }
+        logger.info("recovered lost events up to {}.", previousId);
+        return true;
+    }
+
+    void applyEvent(AbstractEvent event) {
         if (logger.isDebugEnabled()) {
             logger.debug("process event {} -> {}: {}...", this.lastSequenceId, event.sequenceId, event);
         }
+        this.engineMetrics.recordLag(event, System.currentTimeMillis());
         if(event instanceof OrderRequestEvent){
             createOrder((OrderRequestEvent)event);
+        }else if(event instanceof OrderBatchEvent){
+            createOrders((OrderBatchEvent)event);
         }else if(event instanceof OrderCancelEvent){
             cancelOrder((OrderCancelEvent)event);
+        }else if(event instanceof OrderMassCancelEvent){
+            massCancel((OrderMassCancelEvent)event);
+        }else if(event instanceof TriggerOrderEvent){
+            createTriggerOrder((TriggerOrderEvent)event);
         }else if(event instanceof TransferEvent){
             transfer((TransferEvent)event);
         }
+        activateTriggerOrders(event.sequenceId, event.createdAt);
         this.lastSequenceId = event.sequenceId;
+        // 只校验本事件涉及的用户和订单:
+        if (this.invariantChecker.isEnabled()) {
+            String error = this.invariantChecker.checkTouched();
+            if (error != null) {
+                logger.error("invariant violated after event {}: {}", event, error);
+                panic();
+                return;
+            }
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("set last processed sequence id: {}...", this.lastSequenceId);
         }
@@ -123,39 +491,215 @@ public class TradingEngineService extends LoggerSupport {
         }
     }
     void createOrder(OrderRequestEvent event){
-        ZonedDateTime zdt = Instant.ofEpochMilli(event.createdAt).atZone(zoneId);
+        long orderId=createOrderId(event.sequenceId,event.createdAt);
+        addApiResult(placeOrder(event.refId,event.sequenceId,event.createdAt,orderId,event.userId,event.direction,
+                event.price,event.quantity,event.type,event.timeInForce));
+    }
+
+    /**
+     * Create all orders of the batch in list order, the i-th order uses order id of the event plus i.
+     */
+    void createOrders(OrderBatchEvent event){
+        if (event.orders == null || event.orders.isEmpty() || event.orders.size() > OrderBatchEvent.MAX_ORDERS) {
+            logger.warn("invalid order batch: {}", event);
+            addApiResult(ApiResultMessage.batchInvalid(event.refId, event.createdAt));
+            return;
+        }
+        long baseOrderId=createOrderId(event.sequenceId,event.createdAt);
+        List<OrderResultBean> results = new ArrayList<>(event.orders.size());
+        for (int i = 0; i < event.orders.size(); i++) {
+            OrderBatchEvent.Item item = event.orders.get(i);
+            ApiResultMessage result = placeOrder(null, event.sequenceId, event.createdAt, baseOrderId + i,
+                    event.userId, item.direction, item.price, item.quantity, item.type, item.timeInForce);
+            results.add(new OrderResultBean((OrderEntity) result.result, result.error));
+        }
+        addApiResult(ApiResultMessage.batchSuccess(event.refId, results, event.createdAt));
+    }
+
+    long createOrderId(long sequenceId, long ts){
+        ZonedDateTime zdt = Instant.ofEpochMilli(ts).atZone(zoneId);
         int year = zdt.getYear();
         int month = zdt.getMonth().getValue();
-        long orderId=event.sequenceId*1000+(year*100+month);
-        OrderEntity order = orderService.createOrder(event.sequenceId,event.createdAt,orderId,event.userId,event.direction,event.price,event.quantity);
+        return sequenceId*1000+(year*100+month);
+    }
+
+    /**
+     * Create, match and clear one order.
+     *
+     * @return Api result of the order.
+     */
+    ApiResultMessage placeOrder(String refId, long sequenceId, long ts, long orderId, Long userId,
+            Direction direction, BigDecimal price, BigDecimal quantity, OrderType type, TimeInForce timeInForce){
+        if(!orderService.canCreateOrder(userId)){
+            logger.warn("too many open orders of user {}", userId);
+            return ApiResultMessage.tooManyOpenOrders(refId, ts);
+        }
+        OrderEntity order = orderService.createOrder(sequenceId,ts,orderId,userId,direction,price,quantity,type,
+                timeInForce);
         if(order==null){
             logger.warn("create order failed");
-            return;
+            return ApiResultMessage.createOrderFailed(refId, ts);
         }
-        MatchResult result = matchEngine.processOrder(event.sequenceId,order);
+        long start = System.nanoTime();
+        MatchResult result = matchEngine.processOrder(sequenceId,order);
+        long matched = System.nanoTime();
         clearingService.clearMatchResult(result);
-        if(!result.matchDetails.isEmpty()){
-            List<OrderEntity> closedOrders = new ArrayList<>();
-            if(result.takerOrder.status.isFInalStatus){
-                closedOrders.add(result.takerOrder);
+        if(order.status==OrderStatus.PARTIAL_CANCELLED||order.status==OrderStatus.FULLY_CANCELLED){
+            // IOC/FOK/市价单未成交部分及会立即成交的POST_ONLY订单不进入订单簿, 直接解冻并删除:
+            clearingService.clearCancelOrder(order);
+        }
+        this.engineMetrics.recordMatch(matched - start);
+        this.engineMetrics.recordClearing(System.nanoTime() - matched);
+        this.engineMetrics.recordFills(result.matchDetails.size());
+        // 未成交且未进入订单簿时订单簿不变:
+        if (!result.matchDetails.isEmpty() || !order.status.isFInalStatus) {
+            this.orderBookChanged = true;
+        }
+        addChangedOrder(order);
+        for (MatchDetailRecord detail : result.matchDetails) {
+            addChangedOrder(detail.makerOrder());
+        }
+        if(order.status.isFInalStatus){
+            this.closedOrders.add(order);
+        }
+        for (MatchDetailRecord detail : result.matchDetails){
+            var maker = detail.makerOrder();
+            if(maker.status.isFInalStatus){
+                this.closedOrders.add(maker);
+            }
+        }
+        return ApiResultMessage.orderSuccess(refId, order.copy(), ts);
+    }
+    void addApiResult(ApiResultMessage result) {
+        if (result.refId != null) {
+            this.apiResults.add(result);
+        }
+    }
+
+    void saveOrders(List<OrderEntity> orders) {
+        this.storeService.insertIgnore(orders);
+    }
+    void createTriggerOrder(TriggerOrderEvent event){
+        if(!triggerService.canCreateTriggerOrder(event.userId)){
+            logger.warn("too many trigger orders of user {}", event.userId);
+            addApiResult(ApiResultMessage.tooManyOpenOrders(event.refId, event.createdAt));
+            return;
+        }
+        TriggerOrderBean trigger = new TriggerOrderBean();
+        trigger.id = createOrderId(event.sequenceId, event.createdAt);
+        trigger.sequenceId = event.sequenceId;
+        trigger.userId = event.userId;
+        trigger.triggerType = event.triggerType;
+        trigger.triggerPrice = event.triggerPrice;
+        trigger.direction = event.direction;
+        trigger.price = event.price;
+        trigger.quantity = event.quantity;
+        trigger.type = event.type;
+        trigger.timeInForce = event.timeInForce;
+        trigger.status = OrderStatus.PENDING;
+        trigger.createdAt = event.createdAt;
+        // 不冻结资产, 触发时按普通订单冻结:
+        triggerService.add(trigger);
+        addChangedTrigger(trigger);
+        addApiResult(ApiResultMessage.triggerOrderSuccess(event.refId, trigger, event.createdAt));
+    }
+
+    /**
+     * Place orders triggered by current market price. Triggered orders may move the market price and trigger more,
+     * so poll until nothing is triggered. Each trigger order is removed when polled, so the loop always ends.
+     */
+    void activateTriggerOrders(long sequenceId, long ts){
+        // 尚未有成交价时不触发:
+        if (this.matchEngine.marketPrice.signum() == 0) {
+            return;
+        }
+        for (;;) {
+            List<TriggerOrderBean> triggered = this.triggerService.pollTriggered(this.matchEngine.marketPrice);
+            if (triggered.isEmpty()) {
+                return;
             }
-            for (MatchDetailRecord detail : result.matchDetails){
-                var maker = detail.makerOrder();
-                if(maker.status.isFInalStatus){
-                    closedOrders.add(maker);
+            for (TriggerOrderBean trigger : triggered) {
+                ApiResultMessage result = placeOrder(null, sequenceId, ts, trigger.id, trigger.userId,
+                        trigger.direction, trigger.price, trigger.quantity, trigger.type, trigger.timeInForce);
+                if (result.error != null) {
+                    logger.warn("triggered order {} rejected: {}", trigger.id, result.error.message());
+                    trigger.status = OrderStatus.FULLY_CANCELLED;
+                    // 随本批次的user_update发送, 成功触发的由同id的订单体现:
+                    addChangedTrigger(trigger);
                 }
             }
-            this.orderQueue.add(closedOrders);
         }
     }
-    void saveOrders(){
 
+    void cancelOrder(OrderCancelEvent event){
+        OrderEntity order = orderService.getOrder(event.refOrderId);
+        if (order == null) {
+            // 尚未触发的触发订单:
+            TriggerOrderBean trigger = triggerService.get(event.refOrderId);
+            if (trigger != null && trigger.userId.longValue() == event.userId.longValue()) {
+                triggerService.remove(trigger.id);
+                trigger.status = OrderStatus.FULLY_CANCELLED;
+                addChangedTrigger(trigger);
+                addApiResult(ApiResultMessage.triggerOrderSuccess(event.refId, trigger, event.createdAt));
+                return;
+            }
+        }
+        // 未找到活动订单或订单不属于该用户:
+        if (order == null || order.userId.longValue() != event.userId.longValue()) {
+            addApiResult(ApiResultMessage.cancelOrderFailed(event.refId, event.createdAt));
+            return;
+        }
+        long start = System.nanoTime();
+        matchEngine.cancel(event.sequenceId, event.createdAt, order);
+        long canceled = System.nanoTime();
+        clearingService.clearCancelOrder(order);
+        this.engineMetrics.recordMatch(canceled - start);
+        this.engineMetrics.recordClearing(System.nanoTime() - canceled);
+        this.orderBookChanged = true;
+        addChangedOrder(order);
+        addApiResult(ApiResultMessage.orderSuccess(event.refId, order, event.createdAt));
+        this.closedOrders.add(order);
     }
-    void cancelOrder(OrderCancelEvent orderCancelEvent){
-
+    /**
+     * Cancel matched active orders of user by walking the per-user order list, then remove them from book and
+     * unfreeze in bulk.
+     */
+    void massCancel(OrderMassCancelEvent event){
+        UserOrders userOrders = orderService.getUserOrders(event.userId);
+        List<OrderEntity> orders = new ArrayList<>(userOrders == null ? 0 : userOrders.size());
+        if (userOrders != null) {
+            for (OrderEntity order : userOrders) {
+                if (event.matches(order.direction, order.price)) {
+                    orders.add(order);
+                }
+            }
+        }
+        if (orders.isEmpty()) {
+            addApiResult(ApiResultMessage.massCancelSuccess(event.refId, List.of(), event.createdAt));
+            return;
+        }
+        long start = System.nanoTime();
+        matchEngine.cancel(event.sequenceId, event.createdAt, orders);
+        long canceled = System.nanoTime();
+        clearingService.clearCancelOrders(event.userId, orders);
+        this.engineMetrics.recordMatch(canceled - start);
+        this.engineMetrics.recordClearing(System.nanoTime() - canceled);
+        this.orderBookChanged = true;
+        List<OrderEntity> results = new ArrayList<>(orders.size());
+        for (OrderEntity order : orders) {
+            addChangedOrder(order);
+            this.closedOrders.add(order);
+            results.add(order.copy());
+        }
+        addApiResult(ApiResultMessage.massCancelSuccess(event.refId, results, event.createdAt));
     }
     void transfer(TransferEvent event){
-
+        boolean ok = assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId,
+                event.asset, event.amount, event.sufficient);
+        if (ok) {
+            this.changedUsers.add(event.fromUserId);
+            this.changedUsers.add(event.toUserId);
+        }
     }
 
 
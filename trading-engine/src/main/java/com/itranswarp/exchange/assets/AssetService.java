@@ -11,10 +11,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 @Component
 public class AssetService extends LoggerSupport {
     final ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> userAssets = new ConcurrentHashMap<>();
+    // 资产发生变化时通知userId, 用于增量校验:
+    Consumer<Long> assetListener = null;
+
+    public void setAssetListener(Consumer<Long> listener) {
+        this.assetListener = listener;
+    }
+
     public Asset getAsset(Long userId, AssetEnum assetId){
         ConcurrentMap<AssetEnum,Asset> assets=userAssets.get(userId);
         if(assets==null){
@@ -74,7 +82,7 @@ public class AssetService extends LoggerSupport {
         if(toAsset==null){
             toAsset=initAssets(toUser, assetId);
         }
-        return switch (type){
+        boolean ok = switch (type){
             case AVAILABLE_TO_AVAILABLE -> {
                 if(checkBalance && fromAsset.available.compareTo(amount)<0){
                     yield false;
@@ -103,6 +111,11 @@ public class AssetService extends LoggerSupport {
                 throw new IllegalArgumentException("invalid type: "+type);
             }
         };
+        if (ok && this.assetListener != null) {
+            this.assetListener.accept(fromUser);
+            this.assetListener.accept(toUser);
+        }
+        return ok;
     }
 
     private Asset initAssets(Long userId, AssetEnum assetId){
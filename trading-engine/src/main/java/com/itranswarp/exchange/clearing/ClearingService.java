@@ -12,6 +12,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @Component
 public class ClearingService extends LoggerSupport {
@@ -99,4 +100,27 @@ public class ClearingService extends LoggerSupport {
         // 从OrderService中删除订单:
         orderService.removeOrder(order.id);
     }
+
+    /**
+     * Clear canceled orders of one user: unfreeze the total of each asset once instead of once per order.
+     */
+    public void clearCancelOrders(Long userId, List<OrderEntity> orders) {
+        BigDecimal usd = BigDecimal.ZERO;
+        BigDecimal btc = BigDecimal.ZERO;
+        for (OrderEntity order : orders) {
+            switch (order.direction) {
+                case BUY -> usd = usd.add(order.price.multiply(order.unfilledQuantity));
+                case SELL -> btc = btc.add(order.unfilledQuantity);
+                default -> throw new IllegalArgumentException("Invalid direction.");
+            }
+            orderService.removeOrder(order.id);
+        }
+        // 按资产汇总后各解冻一次:
+        if (usd.signum() > 0) {
+            assetService.unfreeze(userId, AssetEnum.USD, usd);
+        }
+        if (btc.signum() > 0) {
+            assetService.unfreeze(userId, AssetEnum.BTC, btc);
+        }
+    }
 }
@@ -0,0 +1,380 @@
+package com.itranswarp.exchange.invariant;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.assets.Asset;
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * Incremental invariant checks of the trading engine, cheap enough to run after every event in production.
+ *
+ * After each event only the users whose assets changed and the orders touched are checked. The frozen amount of each
+ * user's orders and the total of each asset are kept as running sums of deltas, so a check never walks all orders of a
+ * user. Occasionally a full sweep runs on a copy of the state in a background thread. All methods except the sweep are
+ * called on the matching thread.
+ */
+@Component
+public class InvariantChecker extends LoggerSupport {
+
+    final AssetService assetService;
+    final OrderService orderService;
+    final MatchEngine matchEngine;
+
+    public InvariantChecker(@Autowired AssetService assetService, @Autowired OrderService orderService,
+            @Autowired MatchEngine matchEngine) {
+        this.assetService = assetService;
+        this.orderService = orderService;
+        this.matchEngine = matchEngine;
+    }
+
+    @Value("${exchange.config.invariant-check:true}")
+    boolean enabled = true;
+
+    // 每处理多少个事件做一次全量校验, 0表示不做:
+    @Value("${exchange.config.invariant-full-check-events:100000}")
+    long fullCheckEvents = 100000;
+
+    // 自上次校验后资产发生变化的用户:
+    final Set<Long> touchedUsers = new HashSet<>();
+    final Map<Long, OrderEntity> touchedOrders = new HashMap<>();
+    // 上次校验时每个用户每种资产的总额:
+    final Map<Long, Map<AssetEnum, BigDecimal>> userTotals = new HashMap<>();
+    // 每种资产的总额, 必须始终为0:
+    final Map<AssetEnum, BigDecimal> assetTotals = new EnumMap<>(AssetEnum.class);
+    // 每个活动订单当前冻结的金额, 用于计算订单变化引起的冻结增量:
+    final Map<Long, BigDecimal> orderFrozen = new HashMap<>();
+    // 每个用户所有活动订单冻结的总额, 随下单冻结、成交和撤单解冻增量更新:
+    final Map<Long, Map<AssetEnum, BigDecimal>> userOrderFrozen = new HashMap<>();
+    // 本次校验中总额发生变化的资产, 复用以避免每个事件分配:
+    final Set<AssetEnum> changedAssets = EnumSet.noneOf(AssetEnum.class);
+    long eventsSinceFullCheck = 0;
+
+    final AtomicBoolean fullCheckRunning = new AtomicBoolean(false);
+    ExecutorService executor = null;
+    Consumer<String> violationHandler = error -> logger.error("invariant violated: {}", error);
+
+    @PostConstruct
+    public void init() {
+        if (this.enabled) {
+            this.assetService.setAssetListener(this.touchedUsers::add);
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "invariant-check");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop accepting full checks and wait for the running one to finish, so its violation is reported before return.
+     *
+     * @return False if the full check is still running after timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (this.executor == null) {
+            return true;
+        }
+        this.executor.shutdown();
+        return this.executor.awaitTermination(timeout, unit);
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Handler of violations found by the background full check.
+     */
+    public void setViolationHandler(Consumer<String> handler) {
+        this.violationHandler = handler;
+    }
+
+    public void touchOrder(OrderEntity order) {
+        if (this.enabled) {
+            this.touchedOrders.put(order.id, order);
+        }
+    }
+
+    /**
+     * Check users and orders touched since last call, and start a full check occasionally.
+     *
+     * @return Error message, or null if ok.
+     */
+    public String checkTouched() {
+        try {
+            String error = checkTouchedUsers();
+            if (error == null) {
+                error = checkTouchedOrders();
+            }
+            if (error == null) {
+                maybeStartFullCheck();
+            }
+            return error;
+        } finally {
+            this.touchedUsers.clear();
+            this.touchedOrders.clear();
+        }
+    }
+
+    /**
+     * Apply frozen amount changes of touched orders to the per-user accumulator.
+     */
+    void updateOrderFrozen() {
+        for (OrderEntity order : this.touchedOrders.values()) {
+            boolean active = this.orderService.getOrder(order.id) == order;
+            BigDecimal frozen = active ? frozenOf(order.direction, order.price, order.unfilledQuantity) : null;
+            BigDecimal previous = active ? this.orderFrozen.put(order.id, frozen) : this.orderFrozen.remove(order.id);
+            BigDecimal delta = frozen == null ? BigDecimal.ZERO : frozen;
+            if (previous != null) {
+                delta = delta.subtract(previous);
+            }
+            if (delta.signum() != 0) {
+                this.userOrderFrozen.computeIfAbsent(order.userId, k -> new EnumMap<>(AssetEnum.class))
+                        .merge(frozenAsset(order.direction), delta, BigDecimal::add);
+                this.touchedUsers.add(order.userId);
+            }
+        }
+    }
+
+    String checkTouchedUsers() {
+        updateOrderFrozen();
+        this.changedAssets.clear();
+        for (Long userId : this.touchedUsers) {
+            Map<AssetEnum, BigDecimal> orderFrozen = this.userOrderFrozen.get(userId);
+            Map<AssetEnum, Asset> assets = this.assetService.getAssets(userId);
+            Map<AssetEnum, BigDecimal> totals = this.userTotals.computeIfAbsent(userId,
+                    k -> new EnumMap<>(AssetEnum.class));
+            for (Map.Entry<AssetEnum, Asset> entry : assets.entrySet()) {
+                AssetEnum assetId = entry.getKey();
+                Asset asset = entry.getValue();
+                String error = checkAsset(userId, assetId, asset.getAvailable(), asset.getFrozen(),
+                        orderFrozen == null ? null : orderFrozen.get(assetId));
+                if (error != null) {
+                    return error;
+                }
+                // 累加该用户总额的变化:
+                BigDecimal total = asset.getTotal();
+                BigDecimal previous = totals.put(assetId, total);
+                BigDecimal delta = previous == null ? total : total.subtract(previous);
+                if (delta.signum() != 0) {
+                    this.assetTotals.merge(assetId, delta, BigDecimal::add);
+                    this.changedAssets.add(assetId);
+                }
+            }
+            if (orderFrozen != null) {
+                for (Map.Entry<AssetEnum, BigDecimal> entry : orderFrozen.entrySet()) {
+                    if (entry.getValue().signum() != 0 && !assets.containsKey(entry.getKey())) {
+                        return "User " + userId + " has order frozen without asset: " + orderFrozen;
+                    }
+                }
+            }
+        }
+        for (AssetEnum assetId : this.changedAssets) {
+            BigDecimal total = this.assetTotals.get(assetId);
+            if (total.signum() != 0) {
+                return "Non zero " + assetId + " balance: " + total;
+            }
+        }
+        return null;
+    }
+
+    String checkTouchedOrders() {
+        for (OrderEntity order : this.touchedOrders.values()) {
+            boolean active = this.orderService.getOrder(order.id) == order;
+            OrderBook book = order.direction == Direction.BUY ? this.matchEngine.buyBook : this.matchEngine.sellBook;
+            boolean inBook = book.exist(order);
+            if (active) {
+                if (order.unfilledQuantity.signum() <= 0) {
+                    return "Active order must have positive unfilled amount: " + order;
+                }
+                if (!inBook) {
+                    return "Active order not found in order book: " + order;
+                }
+            } else {
+                if (inBook) {
+                    return "Closed order still in order book: " + order;
+                }
+                if (!order.status.isFInalStatus) {
+                    return "Closed order has non-final status: " + order;
+                }
+            }
+        }
+        return null;
+    }
+
+    void maybeStartFullCheck() {
+        if (this.fullCheckEvents <= 0 || ++this.eventsSinceFullCheck < this.fullCheckEvents) {
+            return;
+        }
+        // 上一次全量校验尚未完成时下个事件再试:
+        if (!this.fullCheckRunning.compareAndSet(false, true)) {
+            return;
+        }
+        this.eventsSinceFullCheck = 0;
+        Snapshot snapshot = takeSnapshot();
+        this.executor.execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                String error = snapshot.verify();
+                if (error != null) {
+                    this.violationHandler.accept(error);
+                } else {
+                    logger.info("full invariant check ok: {} assets, {} orders in {} ms.", snapshot.assets.size(),
+                            snapshot.orders.size(), System.currentTimeMillis() - start);
+                }
+            } catch (Exception e) {
+                logger.error("full invariant check failed.", e);
+            } finally {
+                this.fullCheckRunning.set(false);
+            }
+        });
+    }
+
+    /**
+     * Copy assets, active orders and book order ids. BigDecimal is immutable so only references are copied.
+     */
+    Snapshot takeSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (var userEntry : this.assetService.getUserAssets().entrySet()) {
+            long userId = userEntry.getKey();
+            for (var entry : userEntry.getValue().entrySet()) {
+                Asset asset = entry.getValue();
+                snapshot.assets.add(new AssetRow(userId, entry.getKey(), asset.getAvailable(), asset.getFrozen()));
+            }
+        }
+        for (OrderEntity order : this.orderService.getActiveOrders().values()) {
+            snapshot.orders.add(new OrderRow(order.id, order.userId, order.direction, order.price,
+                    order.unfilledQuantity));
+        }
+        for (OrderEntity order : this.matchEngine.buyBook.book.values()) {
+            snapshot.bookOrderIds.add(order.id);
+        }
+        for (OrderEntity order : this.matchEngine.sellBook.book.values()) {
+            snapshot.bookOrderIds.add(order.id);
+        }
+        return snapshot;
+    }
+
+    static String checkAsset(long userId, AssetEnum assetId, BigDecimal available, BigDecimal frozen,
+            BigDecimal orderFrozen) {
+        if (userId == UserType.DEBT.getInternalUserId()) {
+            // 系统负债账户available不允许为正, frozen必须为0:
+            if (available.signum() > 0 || frozen.signum() != 0) {
+                return "Debt has invalid " + assetId + ": available = " + available + ", frozen = " + frozen;
+            }
+        } else if (available.signum() < 0 || frozen.signum() < 0) {
+            return "Trader " + userId + " has negative " + assetId + ": available = " + available + ", frozen = "
+                    + frozen;
+        }
+        // 订单冻结的累计金额必须和Asset冻结一致:
+        BigDecimal expected = orderFrozen == null ? BigDecimal.ZERO : orderFrozen;
+        if (expected.compareTo(frozen) != 0) {
+            return "User " + userId + " order frozen " + expected + " is not equals to " + assetId + " frozen "
+                    + frozen;
+        }
+        return null;
+    }
+
+    static void addOrderFrozen(Map<AssetEnum, BigDecimal> frozen, Direction direction, BigDecimal price,
+            BigDecimal unfilled) {
+        frozen.merge(frozenAsset(direction), frozenOf(direction, price, unfilled), BigDecimal::add);
+    }
+
+    static AssetEnum frozenAsset(Direction direction) {
+        return switch (direction) {
+            case BUY -> AssetEnum.USD;
+            case SELL -> AssetEnum.BTC;
+            default -> throw new IllegalArgumentException("Unexpected order direction: " + direction);
+        };
+    }
+
+    static BigDecimal frozenOf(Direction direction, BigDecimal price, BigDecimal unfilled) {
+        return direction == Direction.BUY ? price.multiply(unfilled) : unfilled;
+    }
+
+    record AssetRow(long userId, AssetEnum assetId, BigDecimal available, BigDecimal frozen) {
+    }
+
+    record OrderRow(long id, long userId, Direction direction, BigDecimal price, BigDecimal unfilled) {
+    }
+
+    static final class Snapshot {
+        final List<AssetRow> assets = new ArrayList<>();
+        final List<OrderRow> orders = new ArrayList<>();
+        final Set<Long> bookOrderIds = new HashSet<>();
+
+        String verify() {
+            Map<Long, Map<AssetEnum, BigDecimal>> userOrderFrozen = new HashMap<>();
+            for (OrderRow order : this.orders) {
+                if (order.unfilled().signum() <= 0) {
+                    return "Active order must have positive unfilled amount: " + order;
+                }
+                if (!this.bookOrderIds.contains(order.id())) {
+                    return "Active order not found in order book: " + order;
+                }
+                addOrderFrozen(userOrderFrozen.computeIfAbsent(order.userId(), k -> new EnumMap<>(AssetEnum.class)),
+                        order.direction(), order.price(), order.unfilled());
+            }
+            if (this.bookOrderIds.size() != this.orders.size()) {
+                return "Not all orders in order book are active: " + this.bookOrderIds.size() + " in book, "
+                        + this.orders.size() + " active.";
+            }
+            Map<AssetEnum, BigDecimal> totals = new EnumMap<>(AssetEnum.class);
+            for (AssetRow row : this.assets) {
+                Map<AssetEnum, BigDecimal> orderFrozen = userOrderFrozen.get(row.userId());
+                String error = checkAsset(row.userId(), row.assetId(), row.available(), row.frozen(),
+                        orderFrozen == null ? null : orderFrozen.remove(row.assetId()));
+                if (error != null) {
+                    return error;
+                }
+                totals.merge(row.assetId(), row.available().add(row.frozen()), BigDecimal::add);
+            }
+            for (var entry : userOrderFrozen.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    return "User " + entry.getKey() + " has order frozen without asset: " + entry.getValue();
+                }
+            }
+            for (var entry : totals.entrySet()) {
+                if (entry.getValue().signum() != 0) {
+                    return "Non zero " + entry.getKey() + " balance: " + entry.getValue();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -3,10 +3,13 @@ package com.itranswarp.exchange.match;
 import com.itranswarp.exchange.bean.OrderBookBean;
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 import com.itranswarp.exchange.model.trade.OrderEntity;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @Component
 public class MatchEngine {
@@ -26,6 +29,42 @@ public class MatchEngine {
         }
     }
 
+    public void cancel(long sequenceId, long ts, OrderEntity order) {
+        this.sequenceId = sequenceId;
+        if (!bookOf(order).remove(order)) {
+            throw new IllegalArgumentException("Order not found in order book.");
+        }
+        updateCancelled(order, ts);
+    }
+
+    /**
+     * Cancel orders of one event, e.g. all orders of one user. All orders are checked before any is removed, so the
+     * book is unchanged if one is not found, and sequenceId is updated once. Each order is still removed from the
+     * book by its own key.
+     */
+    public void cancel(long sequenceId, long ts, List<OrderEntity> orders) {
+        for (OrderEntity order : orders) {
+            if (!bookOf(order).exist(order)) {
+                throw new IllegalArgumentException("Order not found in order book.");
+            }
+        }
+        this.sequenceId = sequenceId;
+        for (OrderEntity order : orders) {
+            bookOf(order).remove(order);
+            updateCancelled(order, ts);
+        }
+    }
+
+    OrderBook bookOf(OrderEntity order) {
+        return order.direction == Direction.BUY ? this.buyBook : this.sellBook;
+    }
+
+    static void updateCancelled(OrderEntity order, long ts) {
+        OrderStatus status = order.unfilledQuantity.compareTo(order.quantity) == 0 ? OrderStatus.FULLY_CANCELLED
+                : OrderStatus.PARTIAL_CANCELLED;
+        order.updateOrder(order.unfilledQuantity, status, ts);
+    }
+
     public OrderBookBean getOrderBook(int maxDepth) {
         return new OrderBookBean(this.sequenceId, this.marketPrice, this.buyBook.getOrderBook(maxDepth),
                 this.sellBook.getOrderBook(maxDepth));
@@ -47,6 +86,18 @@ public class MatchEngine {
         this.sequenceId = sequenceId;
         long ts = takerOrder.createdAt;
         MatchResult matchResult = new MatchResult(takerOrder);
+        TimeInForce timeInForce = takerOrder.timeInForce == null ? TimeInForce.GTC : takerOrder.timeInForce;
+        boolean immediate = timeInForce.isImmediate || takerOrder.type == OrderType.MARKET;
+        if (timeInForce == TimeInForce.POST_ONLY && canMatch(takerOrder, makerBook.getFirst())) {
+            //只做Maker的订单会立即成交，整单取消
+            takerOrder.updateOrder(takerOrder.quantity, OrderStatus.FULLY_CANCELLED, ts);
+            return matchResult;
+        }
+        if (timeInForce == TimeInForce.FOK && !canFill(takerOrder, makerBook)) {
+            //无法全部成交，在修改任何Maker之前整单取消
+            takerOrder.updateOrder(takerOrder.quantity, OrderStatus.FULLY_CANCELLED, ts);
+            return matchResult;
+        }
         BigDecimal takerUnfilledQuantity = takerOrder.quantity;
         for (; ; ) {
             OrderEntity makerOrder = makerBook.getFirst();
@@ -54,11 +105,8 @@ public class MatchEngine {
                 //对手盘不存在
                 break;
             }
-            if(takerOrder.direction==Direction.BUY&&takerOrder.price.compareTo(makerOrder.price)<0){
-                //买入价格比卖盘第一档价格低
-                break;
-            }else if(takerOrder.direction==Direction.SELL&&takerOrder.price.compareTo(makerOrder.price)>0){
-                //卖单价格比买盘第一档价格高
+            if (!canMatch(takerOrder, makerOrder)) {
+                //买入价格比卖盘第一档价格低或卖单价格比买盘第一档价格高
                 break;
             }
             this.marketPrice=makerOrder.price;
@@ -79,36 +127,48 @@ public class MatchEngine {
                 break;
             }
         }
-            //Taker订单未完全成交时，放入丁单薄
             if(takerUnfilledQuantity.signum()>0){
-                takerOrder.updateOrder(takerUnfilledQuantity,takerUnfilledQuantity.compareTo(takerOrder.quantity)==0
-                        ?OrderStatus.PENDING:OrderStatus.PARTIAL_FILLED,ts);
-                anotherBook.add(takerOrder);
+                boolean unfilled = takerUnfilledQuantity.compareTo(takerOrder.quantity)==0;
+                if(immediate){
+                    //IOC/FOK/市价单未成交部分取消，不进入订单簿
+                    takerOrder.updateOrder(takerUnfilledQuantity,
+                            unfilled?OrderStatus.FULLY_CANCELLED:OrderStatus.PARTIAL_CANCELLED,ts);
+                }else{
+                    //Taker订单未完全成交时，放入丁单薄
+                    takerOrder.updateOrder(takerUnfilledQuantity,unfilled?OrderStatus.PENDING:OrderStatus.PARTIAL_FILLED,
+                            ts);
+                    anotherBook.add(takerOrder);
+                }
             }
         return matchResult;
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    /**
+     * Check if taker price crosses the maker order.
+     */
+    static boolean canMatch(OrderEntity takerOrder, OrderEntity makerOrder) {
+        if (makerOrder == null) {
+            return false;
+        }
+        return takerOrder.direction == Direction.BUY ? takerOrder.price.compareTo(makerOrder.price) >= 0
+                : takerOrder.price.compareTo(makerOrder.price) <= 0;
+    }
 
+    /**
+     * Check if the taker can be fully filled by makers within its price, by summing maker quantities in book order
+     * without changing any maker.
+     */
+    static boolean canFill(OrderEntity takerOrder, OrderBook makerBook) {
+        BigDecimal available = BigDecimal.ZERO;
+        for (OrderEntity makerOrder : makerBook.book.values()) {
+            if (!canMatch(takerOrder, makerOrder)) {
+                return false;
+            }
+            available = available.add(makerOrder.unfilledQuantity);
+            if (available.compareTo(takerOrder.quantity) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -22,13 +22,13 @@ public class OrderBook {
         return this.book.isEmpty()? null:this.book.firstEntry().getValue();
     }
     public boolean remove(OrderEntity order){
-        return this.book.remove(new OrderKey(order.sequenceId,order.price)) != null;
+        return this.book.remove(new OrderKey(order.sequenceId,order.id,order.price)) != null;
     }
     public boolean add(OrderEntity order){
-        return this.book.put(new OrderKey(order.sequenceId,order.price),order)==null;
+        return this.book.put(new OrderKey(order.sequenceId,order.id,order.price),order)==null;
     }
     public boolean exist(OrderEntity order){
-        return this.book.containsKey(new OrderKey(order.sequenceId,order.price));
+        return this.book.containsKey(new OrderKey(order.sequenceId,order.id,order.price));
     }
     public int size(){
         return this.book.size();
@@ -38,8 +38,12 @@ public class OrderBook {
         public int compare(OrderKey o1, OrderKey o2) {
             //价格低的在前面
             int cmp = o1.price().compareTo(o2.price());
-            //时间早在前面
-            return cmp==0?Long.compare(o1.sequenceId(),o2.sequenceId()):cmp;
+            if (cmp != 0) {
+                return cmp;
+            }
+            //时间早在前面, 同一批次按订单顺序
+            cmp = Long.compare(o1.sequenceId(), o2.sequenceId());
+            return cmp == 0 ? Long.compare(o1.orderId(), o2.orderId()) : cmp;
         }
     };
     private static final Comparator<OrderKey> SORT_BUY =new Comparator<OrderKey>() {
@@ -47,8 +51,12 @@ public class OrderBook {
         public int compare(OrderKey o1, OrderKey o2) {
             //价格高在前
             int cmp = o2.price().compareTo(o1.price());
-            //时间早在前面
-            return cmp == 0 ? Long.compare(o1.sequenceId(),o2.sequenceId()) : cmp;
+            if (cmp != 0) {
+                return cmp;
+            }
+            //时间早在前面, 同一批次按订单顺序
+            cmp = Long.compare(o1.sequenceId(), o2.sequenceId());
+            return cmp == 0 ? Long.compare(o1.orderId(), o2.orderId()) : cmp;
         }
     };
 
@@ -2,5 +2,8 @@ package com.itranswarp.exchange.match;
 
 import java.math.BigDecimal;
 
-public record OrderKey(long sequenceId, BigDecimal price) {
+/**
+ * Key of order book. Orders of one batch event share the sequenceId, so orderId breaks the tie in request order.
+ */
+public record OrderKey(long sequenceId, long orderId, BigDecimal price) {
 }
@@ -0,0 +1,204 @@
+package com.itranswarp.exchange.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.OrderBatchEvent;
+import com.itranswarp.exchange.message.event.OrderCancelEvent;
+import com.itranswarp.exchange.message.event.OrderMassCancelEvent;
+import com.itranswarp.exchange.message.event.OrderRequestEvent;
+import com.itranswarp.exchange.message.event.TransferEvent;
+import com.itranswarp.exchange.message.event.TriggerOrderEvent;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Always-on latency and book metrics of the trading engine.
+ *
+ * Hot path records into HdrHistogram Recorders (wait-free, no allocation). Every interval the histograms are swapped
+ * out and their percentiles published as Micrometer gauges, so p99 / p999 reflect the last interval only.
+ */
+@Component
+public class EngineMetrics extends LoggerSupport {
+
+    static final double[] PERCENTILES = { 50.0, 99.0, 99.9, 100.0 };
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${exchange.config.engine-metrics-interval:10000}")
+    long interval = 10000;
+
+    // 纳秒:
+    final Timing queueWait = new Timing("queue_wait");
+    final Timing match = new Timing("match");
+    final Timing clearing = new Timing("clearing");
+    // 定序到引擎处理的延迟, 按事件类型:
+    final Timing orderLag = new Timing("lag", "order");
+    final Timing cancelLag = new Timing("lag", "cancel");
+    final Timing transferLag = new Timing("lag", "transfer");
+    // 每个订单的成交笔数:
+    final Timing fills = new Timing("fills");
+
+    final Timing[] timings = { queueWait, match, clearing, orderLag, cancelLag, transferLag, fills };
+
+    // 由匹配线程在批次结束时更新, gauge不直接读取引擎的非线程安全集合:
+    volatile int buyOrders = 0;
+    volatile int sellOrders = 0;
+    volatile int activeOrders = 0;
+    volatile int triggerOrders = 0;
+
+    ScheduledExecutorService scheduler = null;
+
+    @PostConstruct
+    public void init() {
+        for (Timing timing : this.timings) {
+            boolean isFills = timing == this.fills;
+            for (double percentile : PERCENTILES) {
+                String quantile = percentile == 100.0 ? "max" : String.valueOf(percentile / 100);
+                Gauge.builder(isFills ? "exchange.engine.fills" : "exchange.engine.latency", timing,
+                        t -> isFills ? t.valueAt(percentile) : t.valueAt(percentile) / 1e9)
+                        .tag("stage", timing.stage).tag("type", timing.type).tag("quantile", quantile)
+                        .baseUnit(isFills ? null : "seconds").register(this.meterRegistry);
+            }
+            Gauge.builder(isFills ? "exchange.engine.orders.matched" : "exchange.engine.latency.count", timing,
+                    Timing::count).tag("stage", timing.stage).tag("type", timing.type).register(this.meterRegistry);
+        }
+        Gauge.builder("exchange.engine.book.orders", this, m -> m.buyOrders).tag("direction", "BUY")
+                .register(this.meterRegistry);
+        Gauge.builder("exchange.engine.book.orders", this, m -> m.sellOrders).tag("direction", "SELL")
+                .register(this.meterRegistry);
+        Gauge.builder("exchange.engine.orders.active", this, m -> m.activeOrders).register(this.meterRegistry);
+        Gauge.builder("exchange.engine.orders.trigger", this, m -> m.triggerOrders).register(this.meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "engine-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleAtFixedRate(this::rotate, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    public void recordQueueWait(long nanos) {
+        this.queueWait.recorder.recordValue(Math.max(0, nanos));
+    }
+
+    public void recordMatch(long nanos) {
+        this.match.recorder.recordValue(Math.max(0, nanos));
+    }
+
+    public void recordClearing(long nanos) {
+        this.clearing.recorder.recordValue(Math.max(0, nanos));
+    }
+
+    public void recordFills(int fills) {
+        this.fills.recorder.recordValue(fills);
+    }
+
+    /**
+     * Lag from sequencer (event.createdAt) to now.
+     */
+    public void recordLag(AbstractEvent event, long now) {
+        Timing timing = null;
+        if (event instanceof OrderRequestEvent || event instanceof OrderBatchEvent
+                || event instanceof TriggerOrderEvent) {
+            timing = this.orderLag;
+        } else if (event instanceof OrderCancelEvent || event instanceof OrderMassCancelEvent) {
+            timing = this.cancelLag;
+        } else if (event instanceof TransferEvent) {
+            timing = this.transferLag;
+        }
+        if (timing != null) {
+            timing.recorder.recordValue(Math.max(0, now - event.createdAt) * 1_000_000);
+        }
+    }
+
+    /**
+     * Called by matching thread at the end of each batch.
+     */
+    public void updateCounts(int buyOrders, int sellOrders, int activeOrders, int triggerOrders) {
+        this.buyOrders = buyOrders;
+        this.sellOrders = sellOrders;
+        this.activeOrders = activeOrders;
+        this.triggerOrders = triggerOrders;
+    }
+
+    void rotate() {
+        try {
+            Map<String, String> summary = new LinkedHashMap<>();
+            for (Timing timing : this.timings) {
+                timing.rotate();
+                if (timing.count() > 0) {
+                    summary.put(timing.stage + "." + timing.type,
+                            timing == this.fills ? timing.format(1) : timing.format(1000));
+                }
+            }
+            if (!summary.isEmpty()) {
+                logger.info("engine metrics p50/p99/p999/max (us, fills): {}", summary);
+            }
+        } catch (Exception e) {
+            logger.error("rotate metrics failed.", e);
+        }
+    }
+
+    static final class Timing {
+        final String stage;
+        final String type;
+        final Recorder recorder = new Recorder(3);
+        // 上一周期的直方图, 供gauge读取:
+        volatile Histogram last = null;
+
+        Timing(String stage) {
+            this(stage, "all");
+        }
+
+        Timing(String stage, String type) {
+            this.stage = stage;
+            this.type = type;
+        }
+
+        void rotate() {
+            // gauge读取的last不再被修改, 每个周期分配一次新的直方图:
+            this.last = this.recorder.getIntervalHistogram();
+        }
+
+        double valueAt(double percentile) {
+            Histogram h = this.last;
+            if (h == null || h.getTotalCount() == 0) {
+                return 0;
+            }
+            return percentile == 100.0 ? h.getMaxValue() : h.getValueAtPercentile(percentile);
+        }
+
+        long count() {
+            Histogram h = this.last;
+            return h == null ? 0 : h.getTotalCount();
+        }
+
+        String format(long divisor) {
+            return String.format("%d/%d/%d/%d", (long) valueAt(50.0) / divisor, (long) valueAt(99.0) / divisor,
+                    (long) valueAt(99.9) / divisor, (long) valueAt(100.0) / divisor);
+        }
+    }
+}
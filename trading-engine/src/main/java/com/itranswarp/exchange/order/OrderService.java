@@ -3,14 +3,19 @@ package com.itranswarp.exchange.order;
 import com.itranswarp.exchange.assets.AssetService;
 import com.itranswarp.exchange.enums.AssetEnum;
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 import com.itranswarp.exchange.model.trade.OrderEntity;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -26,13 +31,29 @@ public class OrderService {
         this.assetService = assetService;
     }
     final ConcurrentMap<Long, OrderEntity> activeOrders = new ConcurrentHashMap<>();
-    final ConcurrentMap<Long, ConcurrentMap<Long, OrderEntity>> userOrders = new ConcurrentHashMap<>();
+    // 每个用户的活动订单链表, 只在撮合线程访问:
+    final Map<Long, UserOrders> userOrders = new HashMap<>();
+
+    // 每个用户最多的活动订单数量, 0表示不限制:
+    @Value("${exchange.config.max-open-orders-per-user:1000}")
+    int maxOpenOrdersPerUser = 1000;
+
+    /**
+     * Check if the user can create one more active order.
+     */
+    public boolean canCreateOrder(Long userId) {
+        if (this.maxOpenOrdersPerUser <= 0) {
+            return true;
+        }
+        UserOrders uOrders = this.userOrders.get(userId);
+        return uOrders == null || uOrders.size() < this.maxOpenOrdersPerUser;
+    }
 
     /**
      * 创建订单，失败返回null:
      */
     public OrderEntity createOrder(long sequenceId, long ts, Long orderId, Long userId, Direction direction,
-                                   BigDecimal price, BigDecimal quantity) {
+                                   BigDecimal price, BigDecimal quantity, OrderType type, TimeInForce timeInForce) {
         switch (direction) {
             case BUY -> {
                 // 买入，需冻结USD：
@@ -56,16 +77,19 @@ public class OrderService {
         order.price = price;
         order.quantity = quantity;
         order.unfilledQuantity = quantity;
+        // 旧事件没有订单类型, 按限价GTC处理:
+        order.type = type == null ? OrderType.LIMIT : type;
+        order.timeInForce = timeInForce == null ? TimeInForce.GTC : timeInForce;
         order.createdAt = order.updatedAt = ts;
         // 添加到ActiveOrders:
         this.activeOrders.put(order.id, order);
         // 添加到UserOrders:
-        ConcurrentMap<Long, OrderEntity> uOrders = this.userOrders.get(userId);
+        UserOrders uOrders = this.userOrders.get(userId);
         if (uOrders == null) {
-            uOrders = new ConcurrentHashMap<>();
+            uOrders = new UserOrders();
             this.userOrders.put(userId, uOrders);
         }
-        uOrders.put(order.id, order);
+        uOrders.add(order);
         return order;
     }
 
@@ -77,10 +101,18 @@ public class OrderService {
         return this.activeOrders.get(orderId);
     }
 
-    public ConcurrentMap<Long, OrderEntity> getUserOrders(Long userId) {
+    /**
+     * Get active orders of user, or null if user has no active order.
+     */
+    public UserOrders getUserOrders(Long userId) {
         return this.userOrders.get(userId);
     }
 
+    public int getUserOrderCount(Long userId) {
+        UserOrders uOrders = this.userOrders.get(userId);
+        return uOrders == null ? 0 : uOrders.size();
+    }
+
     // 删除活动订单:
     public void removeOrder(Long orderId) {
         // 从ActiveOrders中删除:
@@ -89,12 +121,14 @@ public class OrderService {
             throw new IllegalArgumentException("Order not found by orderId in active orders: " + orderId);
         }
         // 从UserOrders中删除:
-        ConcurrentMap<Long, OrderEntity> uOrders = userOrders.get(removed.userId);
+        UserOrders uOrders = userOrders.get(removed.userId);
         if (uOrders == null) {
             throw new IllegalArgumentException("User orders not found by userId: " + removed.userId);
         }
-        if (uOrders.remove(orderId) == null) {
-            throw new IllegalArgumentException("Order not found by orderId in user orders: " + orderId);
+        uOrders.remove(removed);
+        // 没有活动订单的用户不再保留链表:
+        if (uOrders.isEmpty()) {
+            this.userOrders.remove(removed.userId);
         }
     }
 
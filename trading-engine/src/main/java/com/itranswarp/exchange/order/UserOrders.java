@@ -0,0 +1,95 @@
+package com.itranswarp.exchange.order;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * Active orders of one user as an intrusive doubly linked list through OrderEntity.prevUserOrder and
+ * OrderEntity.nextUserOrder, in creation order.
+ *
+ * Add and remove are O(1) without allocation. Only accessed by the matching thread.
+ */
+public class UserOrders implements Iterable<OrderEntity> {
+
+    OrderEntity head = null;
+    OrderEntity tail = null;
+    int size = 0;
+
+    void add(OrderEntity order) {
+        order.prevUserOrder = this.tail;
+        order.nextUserOrder = null;
+        if (this.tail == null) {
+            this.head = order;
+        } else {
+            this.tail.nextUserOrder = order;
+        }
+        this.tail = order;
+        this.size++;
+    }
+
+    void remove(OrderEntity order) {
+        OrderEntity prev = order.prevUserOrder;
+        OrderEntity next = order.nextUserOrder;
+        if (prev == null) {
+            this.head = next;
+        } else {
+            prev.nextUserOrder = next;
+        }
+        if (next == null) {
+            this.tail = prev;
+        } else {
+            next.prevUserOrder = prev;
+        }
+        order.prevUserOrder = null;
+        order.nextUserOrder = null;
+        this.size--;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Copy orders to a list, which is safe to iterate while orders are removed.
+     */
+    public List<OrderEntity> toList() {
+        List<OrderEntity> list = new ArrayList<>(this.size);
+        for (OrderEntity order = this.head; order != null; order = order.nextUserOrder) {
+            list.add(order);
+        }
+        return list;
+    }
+
+    /**
+     * Iterate orders. The current order can be removed during iteration because next is read in advance.
+     */
+    @Override
+    public Iterator<OrderEntity> iterator() {
+        return new Iterator<>() {
+            OrderEntity next = head;
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public OrderEntity next() {
+                OrderEntity order = this.next;
+                if (order == null) {
+                    throw new NoSuchElementException();
+                }
+                this.next = order.nextUserOrder;
+                return order;
+            }
+        };
+    }
+}
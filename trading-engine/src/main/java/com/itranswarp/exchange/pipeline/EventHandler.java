@@ -0,0 +1,10 @@
+package com.itranswarp.exchange.pipeline;
+
+@FunctionalInterface
+public interface EventHandler<T> {
+
+    /**
+     * Handle entry of sequence. endOfBatch is true for the last entry currently available to this stage.
+     */
+    void onEvent(T entry, long sequence, boolean endOfBatch) throws Exception;
+}
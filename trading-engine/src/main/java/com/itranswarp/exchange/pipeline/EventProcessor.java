@@ -0,0 +1,99 @@
+package com.itranswarp.exchange.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One stage of the pipeline running on its own thread. Consumes entries of the ring up to the minimum of the
+ * dependent sequences, which is the ring cursor for the first stage or the sequences of upstream stages.
+ */
+public class EventProcessor<T> implements Runnable {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final String name;
+    final EventRing<T> ring;
+    final Sequence[] dependentSequences;
+    final EventHandler<T> handler;
+    final Sequence sequence = new Sequence(EventRing.INITIAL);
+
+    volatile boolean running = false;
+    Thread thread = null;
+    FailureHandler failureHandler = null;
+
+    public EventProcessor(String name, EventRing<T> ring, EventHandler<T> handler, Sequence... dependentSequences) {
+        this.name = name;
+        this.ring = ring;
+        this.handler = handler;
+        this.dependentSequences = dependentSequences.length == 0 ? new Sequence[] { ring.getCursor() }
+                : dependentSequences;
+    }
+
+    public Sequence getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Set handler called on the stage thread after the handler failed and the stage stopped.
+     */
+    public void setFailureHandler(FailureHandler failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    public void start() {
+        this.running = true;
+        this.thread = new Thread(this, this.name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public void halt() {
+        this.running = false;
+        if (this.thread != null) {
+            try {
+                this.thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        logger.info("pipeline stage {} started.", this.name);
+        long next = this.sequence.get() + 1;
+        int spins = 0;
+        while (this.running) {
+            long available = Sequence.min(this.dependentSequences, Long.MAX_VALUE);
+            if (available < next) {
+                spins = EventRing.backoff(spins);
+                continue;
+            }
+            spins = 0;
+            for (long seq = next; seq <= available; seq++) {
+                try {
+                    this.handler.onEvent(this.ring.get(seq), seq, seq == available);
+                } catch (Exception e) {
+                    // 不跳过失败的事件: 停止本阶段且不推进sequence, 下游阶段和生产者都停在该事件之前:
+                    logger.error("pipeline stage " + this.name + " failed at sequence " + seq, e);
+                    this.sequence.set(seq - 1);
+                    this.running = false;
+                    if (this.failureHandler != null) {
+                        this.failureHandler.onFailure(this.name, seq, e);
+                    }
+                    return;
+                }
+            }
+            // 处理完一批后再推进, 下游阶段和生产者才能看到:
+            this.sequence.set(available);
+            next = available + 1;
+        }
+        logger.info("pipeline stage {} stopped.", this.name);
+    }
+
+    @FunctionalInterface
+    public interface FailureHandler {
+
+        void onFailure(String stage, long sequence, Exception e);
+    }
+}
@@ -0,0 +1,92 @@
+package com.itranswarp.exchange.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Ring of preallocated entries with a single producer.
+ *
+ * The producer claims a sequence by next(), fills the entry and calls publish(). Consumers run as EventProcessors
+ * with their own sequences, and the producer never overwrites an entry not yet consumed by all gating sequences.
+ * No locks and no allocation after construction.
+ */
+public class EventRing<T> {
+
+    static final long INITIAL = -1;
+
+    final Object[] entries;
+    final int mask;
+    final Sequence cursor = new Sequence(INITIAL);
+    Sequence[] gatingSequences = new Sequence[0];
+
+    // 仅由生产者线程访问:
+    long nextValue = INITIAL;
+    long cachedGating = INITIAL;
+
+    public EventRing(int size, Supplier<T> factory) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size must be a power of 2.");
+        }
+        this.entries = new Object[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.entries[i] = factory.get();
+        }
+    }
+
+    public int size() {
+        return this.entries.length;
+    }
+
+    public Sequence getCursor() {
+        return this.cursor;
+    }
+
+    /**
+     * Set sequences of the last stages. Must be called before the first next().
+     */
+    public void setGatingSequences(Sequence... sequences) {
+        this.gatingSequences = sequences;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) this.entries[(int) sequence & this.mask];
+    }
+
+    /**
+     * Claim next sequence, waiting while the ring is full.
+     */
+    public long next() {
+        long next = this.nextValue + 1;
+        long wrapPoint = next - this.entries.length;
+        if (wrapPoint > this.cachedGating) {
+            long gating;
+            int spins = 0;
+            while (wrapPoint > (gating = Sequence.min(this.gatingSequences, next - 1))) {
+                spins = backoff(spins);
+            }
+            this.cachedGating = gating;
+        }
+        this.nextValue = next;
+        return next;
+    }
+
+    public void publish(long sequence) {
+        this.cursor.set(sequence);
+    }
+
+    /**
+     * Busy spin first, then yield, then park shortly, so an idle stage does not burn a core.
+     */
+    static int backoff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else if (spins < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return spins + 1;
+    }
+}
@@ -0,0 +1,34 @@
+package com.itranswarp.exchange.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * Entry of the engine ring. Written by the Kafka consumer (event) and the matching stage (outputs), read by the
+ * downstream stages. Lists are reused when the slot wraps around.
+ */
+public class EventSlot {
+
+    public AbstractEvent event;
+
+    // 写入ring的时间, 用于统计排队延迟:
+    public long publishedNanos;
+
+    // 本事件结束的订单, 由持久化阶段写入数据库:
+    public final List<OrderEntity> closedOrders = new ArrayList<>();
+
+    // 批次最后一个事件携带整批的Redis输出, 由通知阶段发送:
+    public String orderBook;
+    public final List<Map.Entry<String, String>> messages = new ArrayList<>();
+
+    public void reset(AbstractEvent event) {
+        this.event = event;
+        this.closedOrders.clear();
+        this.orderBook = null;
+        this.messages.clear();
+    }
+}
@@ -0,0 +1,37 @@
+package com.itranswarp.exchange.pipeline;
+
+/**
+ * Cursor of the ring written by one thread and read by others. Padded to its own cache line so cursors of different
+ * stages do not false share.
+ */
+public class Sequence {
+
+    long p1, p2, p3, p4, p5, p6, p7;
+
+    volatile long value;
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    public Sequence(long initialValue) {
+        this.value = initialValue;
+    }
+
+    public long get() {
+        return this.value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Minimum of sequences, or defaultValue if empty.
+     */
+    public static long min(Sequence[] sequences, long defaultValue) {
+        long min = defaultValue;
+        for (Sequence sequence : sequences) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+}
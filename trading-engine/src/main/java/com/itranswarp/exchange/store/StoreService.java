@@ -28,6 +28,17 @@ public class StoreService extends LoggerSupport {
         .collect(Collectors.toList());
     }
 
+    /**
+     * Load events of (fromSequenceId, toSequenceId] ordered by sequenceId, at most limit events.
+     */
+    public List<AbstractEvent> loadEventsFromDb(long fromSequenceId, long toSequenceId, int limit) {
+        var events = this.dbTemplate.from(EventEntity.class)
+                .where("sequenceId > ? AND sequenceId <= ?", fromSequenceId, toSequenceId).orderBy("sequenceId")
+                .limit(limit).list();
+        return events.stream().map(event -> (AbstractEvent) messageTypes.deserialize(event.data))
+                .collect(Collectors.toList());
+    }
+
     public void insertIgnore(List<? extends EntitySupport> list) {
         dbTemplate.insertIgnore(list);
     }
@@ -0,0 +1,140 @@
+package com.itranswarp.exchange.trigger;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+
+/**
+ * Pending trigger orders in two indexes sorted by trigger price, so polling costs O(triggered) instead of scanning all
+ * trigger orders. Only accessed by the matching thread.
+ */
+@Component
+public class TriggerService {
+
+    // 每个用户最多的触发订单数量, 0表示不限制:
+    @Value("${exchange.config.max-trigger-orders-per-user:100}")
+    int maxTriggerOrdersPerUser = 100;
+
+    // 市场价上涨至触发价时触发, 触发价低的在前:
+    final TreeMap<TriggerKey, TriggerOrderBean> aboveBook = new TreeMap<>(SORT_ABOVE);
+    // 市场价下跌至触发价时触发, 触发价高的在前:
+    final TreeMap<TriggerKey, TriggerOrderBean> belowBook = new TreeMap<>(SORT_BELOW);
+    final Map<Long, TriggerOrderBean> triggerOrders = new HashMap<>();
+    // userId -> (id -> 触发订单), 按创建顺序:
+    final Map<Long, Map<Long, TriggerOrderBean>> userTriggerOrders = new HashMap<>();
+
+    public boolean canCreateTriggerOrder(Long userId) {
+        if (this.maxTriggerOrdersPerUser <= 0) {
+            return true;
+        }
+        Map<Long, TriggerOrderBean> orders = this.userTriggerOrders.get(userId);
+        return orders == null || orders.size() < this.maxTriggerOrdersPerUser;
+    }
+
+    public void add(TriggerOrderBean order) {
+        if (this.triggerOrders.putIfAbsent(order.id, order) != null) {
+            throw new IllegalArgumentException("Duplicate trigger order id: " + order.id);
+        }
+        bookOf(order).put(keyOf(order), order);
+        this.userTriggerOrders.computeIfAbsent(order.userId, k -> new LinkedHashMap<>()).put(order.id, order);
+    }
+
+    public TriggerOrderBean get(Long id) {
+        return this.triggerOrders.get(id);
+    }
+
+    public TriggerOrderBean remove(Long id) {
+        TriggerOrderBean order = this.triggerOrders.remove(id);
+        if (order != null) {
+            bookOf(order).remove(keyOf(order));
+            removeUserTriggerOrder(order);
+        }
+        return order;
+    }
+
+    public int size() {
+        return this.triggerOrders.size();
+    }
+
+    /**
+     * All pending trigger orders in no particular order.
+     */
+    public List<TriggerOrderBean> getTriggerOrders() {
+        return new ArrayList<>(this.triggerOrders.values());
+    }
+
+    /**
+     * Pending trigger orders of user in creation order.
+     */
+    public List<TriggerOrderBean> getUserTriggerOrders(Long userId) {
+        Map<Long, TriggerOrderBean> orders = this.userTriggerOrders.get(userId);
+        return orders == null ? List.of() : new ArrayList<>(orders.values());
+    }
+
+    /**
+     * Remove and return trigger orders reached by market price, in sequence order.
+     */
+    public List<TriggerOrderBean> pollTriggered(BigDecimal marketPrice) {
+        List<TriggerOrderBean> triggered = null;
+        // 只检查头部, 未触发时为O(1):
+        while (!this.aboveBook.isEmpty() && this.aboveBook.firstKey().triggerPrice().compareTo(marketPrice) <= 0) {
+            triggered = addTriggered(triggered, this.aboveBook.pollFirstEntry().getValue());
+        }
+        while (!this.belowBook.isEmpty() && this.belowBook.firstKey().triggerPrice().compareTo(marketPrice) >= 0) {
+            triggered = addTriggered(triggered, this.belowBook.pollFirstEntry().getValue());
+        }
+        if (triggered == null) {
+            return List.of();
+        }
+        triggered.sort(Comparator.comparingLong((TriggerOrderBean o) -> o.sequenceId).thenComparingLong(o -> o.id));
+        return triggered;
+    }
+
+    List<TriggerOrderBean> addTriggered(List<TriggerOrderBean> triggered, TriggerOrderBean order) {
+        if (triggered == null) {
+            triggered = new ArrayList<>();
+        }
+        triggered.add(order);
+        this.triggerOrders.remove(order.id);
+        removeUserTriggerOrder(order);
+        return triggered;
+    }
+
+    void removeUserTriggerOrder(TriggerOrderBean order) {
+        Map<Long, TriggerOrderBean> orders = this.userTriggerOrders.get(order.userId);
+        if (orders != null) {
+            orders.remove(order.id);
+            if (orders.isEmpty()) {
+                this.userTriggerOrders.remove(order.userId);
+            }
+        }
+    }
+
+    TreeMap<TriggerKey, TriggerOrderBean> bookOf(TriggerOrderBean order) {
+        return order.triggerType.isAbove(order.direction) ? this.aboveBook : this.belowBook;
+    }
+
+    static TriggerKey keyOf(TriggerOrderBean order) {
+        return new TriggerKey(order.triggerPrice, order.id);
+    }
+
+    record TriggerKey(BigDecimal triggerPrice, long id) {
+    }
+
+    // 触发价相同时按创建顺序:
+    static final Comparator<TriggerKey> SORT_ABOVE = Comparator.comparing(TriggerKey::triggerPrice)
+            .thenComparingLong(TriggerKey::id);
+
+    static final Comparator<TriggerKey> SORT_BELOW = Comparator.comparing(TriggerKey::triggerPrice,
+            Comparator.reverseOrder()).thenComparingLong(TriggerKey::id);
+}
@@ -0,0 +1,371 @@
+package com.itranswarp.exchange;
+
+import com.itranswarp.exchange.assets.Asset;
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+import com.itranswarp.exchange.clearing.ClearingService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.TriggerType;
+import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.invariant.InvariantChecker;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.OrderCancelEvent;
+import com.itranswarp.exchange.message.event.OrderMassCancelEvent;
+import com.itranswarp.exchange.message.event.OrderRequestEvent;
+import com.itranswarp.exchange.message.event.TransferEvent;
+import com.itranswarp.exchange.message.event.TriggerOrderEvent;
+import com.itranswarp.exchange.metrics.EngineMetrics;
+import com.itranswarp.exchange.model.support.EntitySupport;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.store.StoreService;
+import com.itranswarp.exchange.trigger.TriggerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TradingEngineServiceTest {
+    static final Long USER_A = 12345L;
+    static final Long USER_B = 23456L;
+    static final Long USER_C = 34567L;
+    static final Long USER_D = 45678L;
+    static final long TS = 1234567890000L;
+
+    long sequenceId = 0;
+    // AssetService.unfreeze的调用次数:
+    int unfreezeCount = 0;
+    AssetService assetService;
+    OrderService orderService;
+    MatchEngine matchEngine;
+    TriggerService triggerService;
+    InvariantChecker invariantChecker;
+    TradingEngineService engine;
+
+    @BeforeEach
+    void init() {
+        this.assetService = new AssetService() {
+            @Override
+            public void unfreeze(Long userId, AssetEnum assetId, BigDecimal amount) {
+                unfreezeCount++;
+                super.unfreeze(userId, assetId, amount);
+            }
+        };
+        this.orderService = new OrderService(this.assetService);
+        this.matchEngine = new MatchEngine();
+        this.triggerService = new TriggerService();
+        // 每个事件后校验资产和订单, 出错时engine会panic:
+        this.invariantChecker = new InvariantChecker(this.assetService, this.orderService, this.matchEngine);
+        this.invariantChecker.init();
+        this.engine = new TradingEngineService();
+        this.engine.assetService = this.assetService;
+        this.engine.orderService = this.orderService;
+        this.engine.matchEngine = this.matchEngine;
+        this.engine.clearingService = new ClearingService(this.assetService, this.orderService);
+        this.engine.triggerService = this.triggerService;
+        this.engine.invariantChecker = this.invariantChecker;
+        this.engine.engineMetrics = new EngineMetrics();
+        this.engine.zoneId = ZoneOffset.UTC;
+        this.engine.storeService = new StoreService() {
+            @Override
+            public List<AbstractEvent> loadEventsFromDb(long fromSequenceId, long toSequenceId, int limit) {
+                return List.of();
+            }
+
+            @Override
+            public void insertIgnore(List<? extends EntitySupport> list) {
+            }
+        };
+        for (Long userId : List.of(USER_A, USER_B, USER_C, USER_D)) {
+            deposit(userId, AssetEnum.USD, "10000");
+            deposit(userId, AssetEnum.BTC, "10");
+        }
+    }
+
+    @AfterEach
+    void destroy() {
+        this.invariantChecker.shutdown();
+    }
+
+    @Test
+    void cancelPendingTriggerOrder() {
+        long triggerId = trigger(USER_A, TriggerType.STOP_LOSS, Direction.SELL, "90.00", "89.00", "1");
+        TriggerOrderBean trigger = this.triggerService.get(triggerId);
+        assertNotNull(trigger);
+        assertEquals(List.of(trigger), this.engine.getUserState(USER_A).triggers);
+        // 挂起时不冻结资产:
+        assertAsset(USER_A, AssetEnum.BTC, "10", "0");
+
+        // 其他用户不能撤销:
+        cancel(USER_B, triggerId);
+        assertSame(trigger, this.triggerService.get(triggerId));
+        assertEquals(OrderStatus.PENDING, trigger.status);
+
+        cancel(USER_A, triggerId);
+        assertNull(this.triggerService.get(triggerId));
+        assertEquals(OrderStatus.FULLY_CANCELLED, trigger.status);
+        assertTrue(this.engine.getUserState(USER_A).triggers.isEmpty());
+        assertAsset(USER_A, AssetEnum.BTC, "10", "0");
+
+        // 价格到达触发价后不再下单:
+        order(USER_B, Direction.SELL, "90.00", "1");
+        order(USER_C, Direction.BUY, "90.00", "1");
+        assertEquals(0, bd("90.00").compareTo(this.matchEngine.marketPrice));
+        assertNull(this.orderService.getOrder(triggerId));
+        assertEquals(0, this.matchEngine.sellBook.size());
+        assertAsset(USER_A, AssetEnum.BTC, "10", "0");
+    }
+
+    @Test
+    void cancelActiveOrderOrUnknownId() {
+        // 不存在的id既不是活动订单也不是触发订单:
+        cancel(USER_A, 999L);
+        long orderId = order(USER_A, Direction.BUY, "100.00", "2");
+        assertAsset(USER_A, AssetEnum.USD, "9800", "200");
+        cancel(USER_A, orderId);
+        assertNull(this.orderService.getOrder(orderId));
+        assertEquals(0, this.matchEngine.buyBook.size());
+        assertAsset(USER_A, AssetEnum.USD, "10000", "0");
+    }
+
+    @Test
+    void cascadingTriggerOrders() {
+        order(USER_B, Direction.SELL, "100.00", "1");
+        order(USER_B, Direction.SELL, "101.00", "1");
+        order(USER_B, Direction.SELL, "102.00", "1");
+        // 尚无成交价, 创建时不触发:
+        long t1 = trigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "100.00", "101.00", "1");
+        long t2 = trigger(USER_D, TriggerType.STOP_LOSS, Direction.BUY, "101.00", "102.00", "1");
+        assertEquals(2, this.triggerService.size());
+        assertEquals(0, this.matchEngine.marketPrice.signum());
+
+        // 成交价100触发t1, t1成交价101又触发t2:
+        order(USER_C, Direction.BUY, "100.00", "1");
+        assertEquals(0, this.triggerService.size());
+        assertEquals(0, this.matchEngine.sellBook.size());
+        assertEquals(0, this.matchEngine.buyBook.size());
+        assertEquals(0, bd("102.00").compareTo(this.matchEngine.marketPrice));
+        // 触发后的订单使用触发订单的id, 全部成交后不再是活动订单:
+        assertNull(this.orderService.getOrder(t1));
+        assertNull(this.orderService.getOrder(t2));
+        assertAsset(USER_A, AssetEnum.USD, "9899", "0");
+        assertAsset(USER_A, AssetEnum.BTC, "11", "0");
+        assertAsset(USER_D, AssetEnum.USD, "9898", "0");
+        assertAsset(USER_D, AssetEnum.BTC, "11", "0");
+        assertAsset(USER_B, AssetEnum.USD, "10303", "0");
+        assertAsset(USER_B, AssetEnum.BTC, "7", "0");
+    }
+
+    @Test
+    void triggeredOrderRestsInBook() {
+        order(USER_B, Direction.SELL, "100.00", "1");
+        long triggerId = trigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "100.00", "99.00", "2");
+        order(USER_C, Direction.BUY, "100.00", "1");
+        assertEquals(0, this.triggerService.size());
+        // 未成交的触发订单按普通订单冻结并进入订单簿:
+        OrderEntity order = this.orderService.getOrder(triggerId);
+        assertNotNull(order);
+        assertEquals(OrderStatus.PENDING, order.status);
+        assertTrue(this.matchEngine.buyBook.exist(order));
+        assertAsset(USER_A, AssetEnum.USD, "9802", "198");
+        assertTrue(this.engine.getUserState(USER_A).triggers.isEmpty());
+        assertEquals(1, this.engine.getUserState(USER_A).orders.size());
+    }
+
+    @Test
+    void rejectTriggeredOrderWithoutAsset() {
+        order(USER_B, Direction.SELL, "100.00", "1");
+        long triggerId = trigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "100.00", "100.00", "101");
+        TriggerOrderBean trigger = this.triggerService.get(triggerId);
+        order(USER_C, Direction.BUY, "100.00", "1");
+        // 资产不足时触发订单被取消, 不影响其他订单:
+        assertEquals(0, this.triggerService.size());
+        assertEquals(OrderStatus.FULLY_CANCELLED, trigger.status);
+        assertNull(this.orderService.getOrder(triggerId));
+        assertAsset(USER_A, AssetEnum.USD, "10000", "0");
+        assertEquals(0, bd("100.00").compareTo(this.matchEngine.marketPrice));
+    }
+
+    @Test
+    void massCancelAllOrders() {
+        long b1 = order(USER_A, Direction.BUY, "99.00", "1");
+        long b2 = order(USER_A, Direction.BUY, "98.50", "2");
+        long s1 = order(USER_A, Direction.SELL, "101.00", "1.5");
+        long s2 = order(USER_A, Direction.SELL, "102.00", "0.5");
+        long other = order(USER_B, Direction.BUY, "99.00", "1");
+        assertAsset(USER_A, AssetEnum.USD, "9704", "296");
+        assertAsset(USER_A, AssetEnum.BTC, "8", "2");
+
+        this.unfreezeCount = 0;
+        massCancel(USER_A, null, null, null);
+        // 按资产汇总, USD和BTC各解冻一次:
+        assertEquals(2, this.unfreezeCount);
+        assertAsset(USER_A, AssetEnum.USD, "10000", "0");
+        assertAsset(USER_A, AssetEnum.BTC, "10", "0");
+        for (long orderId : List.of(b1, b2, s1, s2)) {
+            assertNull(this.orderService.getOrder(orderId));
+        }
+        assertNull(this.orderService.getUserOrders(USER_A));
+        // 其他用户的订单不受影响:
+        assertEquals(1, this.matchEngine.buyBook.size());
+        assertEquals(0, this.matchEngine.sellBook.size());
+        assertTrue(this.matchEngine.buyBook.exist(this.orderService.getOrder(other)));
+        assertAsset(USER_B, AssetEnum.USD, "9901", "99");
+    }
+
+    @Test
+    void massCancelByDirectionAndPriceRange() {
+        long b1 = order(USER_A, Direction.BUY, "99.00", "1");
+        long b2 = order(USER_A, Direction.BUY, "98.00", "1");
+        long b3 = order(USER_A, Direction.BUY, "97.00", "1");
+        long s1 = order(USER_A, Direction.SELL, "101.00", "1");
+        long s2 = order(USER_A, Direction.SELL, "98.50", "1");
+        // s2与b1成交, 剩余b2, b3, s1:
+        assertNull(this.orderService.getOrder(b1));
+        assertNull(this.orderService.getOrder(s2));
+
+        // 只撤销价格在[98, 101]之间的买单:
+        this.unfreezeCount = 0;
+        massCancel(USER_A, Direction.BUY, "98.00", "101.00");
+        assertEquals(1, this.unfreezeCount);
+        assertNull(this.orderService.getOrder(b2));
+        assertNotNull(this.orderService.getOrder(b3));
+        assertNotNull(this.orderService.getOrder(s1));
+        assertEquals(1, this.matchEngine.buyBook.size());
+        assertEquals(1, this.matchEngine.sellBook.size());
+        assertAsset(USER_A, AssetEnum.USD, "9903", "97");
+        assertAsset(USER_A, AssetEnum.BTC, "9", "1");
+
+        // 没有匹配的订单时不修改订单簿和资产:
+        this.unfreezeCount = 0;
+        massCancel(USER_A, Direction.SELL, null, "100.99");
+        assertEquals(0, this.unfreezeCount);
+        assertNotNull(this.orderService.getOrder(s1));
+
+        massCancel(USER_A, Direction.SELL, "101.00", null);
+        assertNull(this.orderService.getOrder(s1));
+        assertEquals(0, this.matchEngine.sellBook.size());
+        assertAsset(USER_A, AssetEnum.BTC, "10", "0");
+        assertAsset(USER_A, AssetEnum.USD, "9903", "97");
+    }
+
+    @Test
+    void massCancelPartiallyFilledOrders() {
+        long b1 = order(USER_A, Direction.BUY, "100.00", "3");
+        long b2 = order(USER_A, Direction.BUY, "99.00", "1");
+        order(USER_B, Direction.SELL, "100.00", "1");
+        OrderEntity partial = this.orderService.getOrder(b1);
+        OrderEntity open = this.orderService.getOrder(b2);
+        massCancel(USER_A, null, null, null);
+        // 只解冻未成交部分:
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, partial.status);
+        assertEquals(OrderStatus.FULLY_CANCELLED, open.status);
+        assertAsset(USER_A, AssetEnum.USD, "9900", "0");
+        assertAsset(USER_A, AssetEnum.BTC, "11", "0");
+        assertEquals(0, this.matchEngine.buyBook.size());
+    }
+
+    @Test
+    void massCancelMatches() {
+        var event = new OrderMassCancelEvent();
+        assertTrue(event.matches(Direction.BUY, bd("1")));
+        assertTrue(event.matches(Direction.SELL, bd("100000")));
+        event.direction = Direction.SELL;
+        assertFalse(event.matches(Direction.BUY, bd("100")));
+        assertTrue(event.matches(Direction.SELL, bd("100")));
+        // 价格范围包含边界:
+        event.minPrice = bd("100.00");
+        event.maxPrice = bd("101");
+        assertTrue(event.matches(Direction.SELL, bd("100")));
+        assertTrue(event.matches(Direction.SELL, bd("101.000")));
+        assertFalse(event.matches(Direction.SELL, bd("99.99")));
+        assertFalse(event.matches(Direction.SELL, bd("101.01")));
+        event.direction = null;
+        event.maxPrice = null;
+        assertTrue(event.matches(Direction.BUY, bd("100000")));
+        assertFalse(event.matches(Direction.BUY, bd("99")));
+    }
+
+    void deposit(Long userId, AssetEnum asset, String amount) {
+        var event = new TransferEvent();
+        event.fromUserId = UserType.DEBT.getInternalUserId();
+        event.toUserId = userId;
+        event.asset = asset;
+        event.amount = bd(amount);
+        event.sufficient = false;
+        process(event);
+    }
+
+    long order(Long userId, Direction direction, String price, String quantity) {
+        var event = new OrderRequestEvent();
+        event.userId = userId;
+        event.direction = direction;
+        event.price = bd(price);
+        event.quantity = bd(quantity);
+        return process(event);
+    }
+
+    long trigger(Long userId, TriggerType triggerType, Direction direction, String triggerPrice, String price,
+            String quantity) {
+        var event = new TriggerOrderEvent();
+        event.userId = userId;
+        event.triggerType = triggerType;
+        event.triggerPrice = bd(triggerPrice);
+        event.direction = direction;
+        event.price = bd(price);
+        event.quantity = bd(quantity);
+        return process(event);
+    }
+
+    void massCancel(Long userId, Direction direction, String minPrice, String maxPrice) {
+        var event = new OrderMassCancelEvent();
+        event.userId = userId;
+        event.direction = direction;
+        event.minPrice = minPrice == null ? null : bd(minPrice);
+        event.maxPrice = maxPrice == null ? null : bd(maxPrice);
+        process(event);
+    }
+
+    void cancel(Long userId, Long orderId) {
+        var event = new OrderCancelEvent();
+        event.userId = userId;
+        event.refOrderId = orderId;
+        process(event);
+    }
+
+    /**
+     * Process event with next sequence id and return the order id created by this event.
+     */
+    long process(AbstractEvent event) {
+        event.previousId = this.sequenceId;
+        event.sequenceId = ++this.sequenceId;
+        event.createdAt = TS + this.sequenceId;
+        this.engine.processEvent(event);
+        this.engine.endBatchAndDiscard();
+        assertTrue(!this.engine.fatalError, "engine panic after event " + event);
+        return this.engine.createOrderId(event.sequenceId, event.createdAt);
+    }
+
+    void assertAsset(Long userId, AssetEnum assetId, String available, String frozen) {
+        Asset asset = this.assetService.getAsset(userId, assetId);
+        assertEquals(0, bd(available).compareTo(asset.getAvailable()), userId + " " + assetId + " available");
+        assertEquals(0, bd(frozen).compareTo(asset.getFrozen()), userId + " " + assetId + " frozen");
+    }
+
+    BigDecimal bd(String s) {
+        return new BigDecimal(s);
+    }
+}
@@ -0,0 +1,258 @@
+package com.itranswarp.exchange.invariant;
+
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.assets.Transfer;
+import com.itranswarp.exchange.clearing.ClearingService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
+import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.match.MatchDetailRecord;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.match.MatchResult;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InvariantCheckerTest {
+    static final Long USER_A = 12345L;
+    static final Long USER_B = 23456L;
+    static final Long USER_C = 34567L;
+    static final long TS = 1234567890000L;
+
+    long sequenceId = 0;
+    AssetService assetService;
+    OrderService orderService;
+    MatchEngine matchEngine;
+    ClearingService clearingService;
+    InvariantChecker checker;
+    // 后台全量校验发现的错误:
+    final List<String> violations = new ArrayList<>();
+
+    @BeforeEach
+    void init() {
+        this.assetService = new AssetService();
+        this.orderService = new OrderService(this.assetService);
+        this.matchEngine = new MatchEngine();
+        this.clearingService = new ClearingService(this.assetService, this.orderService);
+        this.checker = new InvariantChecker(this.assetService, this.orderService, this.matchEngine);
+        this.checker.init();
+        this.checker.setViolationHandler(this.violations::add);
+        for (Long userId : List.of(USER_A, USER_B)) {
+            deposit(userId, AssetEnum.USD, "10000");
+            deposit(userId, AssetEnum.BTC, "10");
+        }
+    }
+
+    @AfterEach
+    void destroy() {
+        this.checker.shutdown();
+    }
+
+    @Test
+    void tradeKeepsInvariants() {
+        OrderEntity maker = order(USER_A, Direction.SELL, "100.00", "1", TimeInForce.GTC);
+        assertFrozen(USER_A, AssetEnum.BTC, "1");
+        // 部分成交, 剩余部分进入订单簿:
+        OrderEntity taker = order(USER_B, Direction.BUY, "100.00", "3", TimeInForce.GTC);
+        assertEquals(OrderStatus.FULLY_FILLED, maker.status);
+        assertEquals(OrderStatus.PARTIAL_FILLED, taker.status);
+        assertFrozen(USER_A, AssetEnum.BTC, "0");
+        assertFrozen(USER_B, AssetEnum.USD, "200.00");
+        assertFalse(this.checker.orderFrozen.containsKey(maker.id));
+        assertEquals(0, bd("200.00").compareTo(this.checker.orderFrozen.get(taker.id)));
+        assertZeroTotals();
+
+        // 吃掉剩余部分:
+        order(USER_A, Direction.SELL, "99.00", "2", TimeInForce.GTC);
+        assertEquals(OrderStatus.FULLY_FILLED, taker.status);
+        assertFrozen(USER_B, AssetEnum.USD, "0");
+        assertTrue(this.checker.orderFrozen.isEmpty());
+        assertZeroTotals();
+    }
+
+    @Test
+    void cancelSingleOrder() {
+        OrderEntity order = order(USER_A, Direction.BUY, "100.00", "2", TimeInForce.GTC);
+        order(USER_B, Direction.SELL, "100.00", "1", TimeInForce.GTC);
+        assertFrozen(USER_A, AssetEnum.USD, "100.00");
+        cancel(order);
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, order.status);
+        assertFrozen(USER_A, AssetEnum.USD, "0");
+        assertTrue(this.checker.orderFrozen.isEmpty());
+        assertZeroTotals();
+    }
+
+    @Test
+    void massCancelNettedByAsset() {
+        OrderEntity b1 = order(USER_A, Direction.BUY, "100.00", "2", TimeInForce.GTC);
+        OrderEntity b2 = order(USER_A, Direction.BUY, "99.00", "1", TimeInForce.GTC);
+        OrderEntity s1 = order(USER_A, Direction.SELL, "110.00", "3", TimeInForce.GTC);
+        OrderEntity s2 = order(USER_A, Direction.SELL, "111.00", "1", TimeInForce.GTC);
+        order(USER_B, Direction.SELL, "100.00", "1", TimeInForce.GTC);
+        assertFrozen(USER_A, AssetEnum.USD, "199.00");
+        assertFrozen(USER_A, AssetEnum.BTC, "4");
+        // 每种资产合并为一次解冻:
+        massCancel(USER_A, List.of(b1, b2, s1, s2));
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, b1.status);
+        assertEquals(OrderStatus.FULLY_CANCELLED, s2.status);
+        assertFrozen(USER_A, AssetEnum.USD, "0");
+        assertFrozen(USER_A, AssetEnum.BTC, "0");
+        assertTrue(this.checker.orderFrozen.isEmpty());
+        assertEquals(0, this.checker.userOrderFrozen.get(USER_A).get(AssetEnum.USD).signum());
+        assertEquals(0, this.checker.userOrderFrozen.get(USER_A).get(AssetEnum.BTC).signum());
+        assertZeroTotals();
+    }
+
+    @Test
+    void unfreezeRemainderOfIocOrder() {
+        order(USER_A, Direction.SELL, "100.00", "1", TimeInForce.GTC);
+        // IOC未成交部分不进入订单簿, 直接解冻:
+        OrderEntity ioc = order(USER_B, Direction.BUY, "101.00", "3", TimeInForce.IOC);
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, ioc.status);
+        assertNull(this.orderService.getOrder(ioc.id));
+        assertEquals(0, this.matchEngine.buyBook.size());
+        assertFrozen(USER_B, AssetEnum.USD, "0");
+        assertTrue(this.checker.orderFrozen.isEmpty());
+        assertZeroTotals();
+    }
+
+    @Test
+    void transferToNewUser() {
+        deposit(USER_C, AssetEnum.USD, "500");
+        assertEquals(0, bd("500").compareTo(this.checker.userTotals.get(USER_C).get(AssetEnum.USD)));
+        assertZeroTotals();
+        // 用户之间转账不改变资产总额:
+        assertTrue(this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_C, USER_A, AssetEnum.USD,
+                bd("200"), true));
+        assertNull(this.checker.checkTouched());
+        assertEquals(0, bd("300").compareTo(this.checker.userTotals.get(USER_C).get(AssetEnum.USD)));
+        // 新用户可以正常下单:
+        order(USER_C, Direction.BUY, "100.00", "3", TimeInForce.GTC);
+        assertFrozen(USER_C, AssetEnum.USD, "300.00");
+        assertZeroTotals();
+    }
+
+    @Test
+    void detectFrozenNotMatchingOrders() {
+        order(USER_A, Direction.BUY, "100.00", "2", TimeInForce.GTC);
+        // 绕过订单直接解冻:
+        this.assetService.unfreeze(USER_A, AssetEnum.USD, bd("1"));
+        String error = this.checker.checkTouched();
+        assertNotNull(error);
+        assertTrue(error.contains("order frozen"), error);
+    }
+
+    @Test
+    void detectActiveOrderNotInBook() {
+        OrderEntity order = order(USER_A, Direction.SELL, "100.00", "1", TimeInForce.GTC);
+        this.matchEngine.sellBook.remove(order);
+        this.checker.touchOrder(order);
+        String error = this.checker.checkTouched();
+        assertNotNull(error);
+        assertTrue(error.startsWith("Active order not found in order book"), error);
+    }
+
+    @Test
+    void fullCheckWithoutFalsePositives() throws InterruptedException {
+        // 每个事件后都启动全量校验:
+        this.checker.fullCheckEvents = 1;
+        order(USER_A, Direction.SELL, "100.00", "2", TimeInForce.GTC);
+        OrderEntity buy = order(USER_B, Direction.BUY, "100.00", "3", TimeInForce.GTC);
+        order(USER_A, Direction.BUY, "98.00", "1", TimeInForce.GTC);
+        cancel(buy);
+        order(USER_B, Direction.SELL, "97.00", "5", TimeInForce.IOC);
+        deposit(USER_C, AssetEnum.BTC, "1");
+        assertTrue(this.checker.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(this.violations.isEmpty(), this.violations.toString());
+        assertNull(this.checker.takeSnapshot().verify());
+    }
+
+    @Test
+    void fullCheckDetectsUntouchedDrift() throws InterruptedException {
+        this.checker.fullCheckEvents = 2;
+        this.checker.eventsSinceFullCheck = 0;
+        OrderEntity order = order(USER_A, Direction.BUY, "100.00", "2", TimeInForce.GTC);
+        // 修改未被标记的订单, 增量校验无法发现:
+        order.unfilledQuantity = bd("1");
+        deposit(USER_C, AssetEnum.USD, "100");
+        assertEquals(0, this.checker.eventsSinceFullCheck);
+        assertTrue(this.checker.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, this.violations.size());
+        assertTrue(this.violations.get(0).contains("order frozen"), this.violations.get(0));
+    }
+
+    void deposit(Long userId, AssetEnum assetId, String amount) {
+        assertTrue(this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, UserType.DEBT.getInternalUserId(),
+                userId, assetId, bd(amount), false));
+        assertNull(this.checker.checkTouched());
+    }
+
+    /**
+     * Create, match and clear one order like TradingEngineService.placeOrder, then check invariants.
+     */
+    OrderEntity order(Long userId, Direction direction, String price, String quantity, TimeInForce timeInForce) {
+        this.sequenceId++;
+        OrderEntity order = this.orderService.createOrder(this.sequenceId, TS, this.sequenceId * 1000, userId,
+                direction, bd(price), bd(quantity), OrderType.LIMIT, timeInForce);
+        assertNotNull(order);
+        MatchResult result = this.matchEngine.processOrder(this.sequenceId, order);
+        this.clearingService.clearMatchResult(result);
+        if (order.status == OrderStatus.PARTIAL_CANCELLED || order.status == OrderStatus.FULLY_CANCELLED) {
+            this.clearingService.clearCancelOrder(order);
+        }
+        this.checker.touchOrder(order);
+        for (MatchDetailRecord detail : result.matchDetails) {
+            this.checker.touchOrder(detail.makerOrder());
+        }
+        assertNull(this.checker.checkTouched());
+        return order;
+    }
+
+    void cancel(OrderEntity order) {
+        this.sequenceId++;
+        this.matchEngine.cancel(this.sequenceId, TS, order);
+        this.clearingService.clearCancelOrder(order);
+        this.checker.touchOrder(order);
+        assertNull(this.checker.checkTouched());
+    }
+
+    void massCancel(Long userId, List<OrderEntity> orders) {
+        this.sequenceId++;
+        this.matchEngine.cancel(this.sequenceId, TS, orders);
+        this.clearingService.clearCancelOrders(userId, orders);
+        for (OrderEntity order : orders) {
+            this.checker.touchOrder(order);
+        }
+        assertNull(this.checker.checkTouched());
+    }
+
+    void assertFrozen(Long userId, AssetEnum assetId, String frozen) {
+        assertEquals(0, bd(frozen).compareTo(this.assetService.getAsset(userId, assetId).getFrozen()));
+    }
+
+    void assertZeroTotals() {
+        for (BigDecimal total : this.checker.assetTotals.values()) {
+            assertEquals(0, total.signum());
+        }
+    }
+
+    BigDecimal bd(String s) {
+        return new BigDecimal(s);
+    }
+}
@@ -2,6 +2,8 @@ package com.itranswarp.exchange.match;
 
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
 import com.itranswarp.exchange.model.trade.OrderEntity;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +13,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MatchEngineTest {
@@ -49,6 +54,89 @@ public class MatchEngineTest {
         }, matches.toArray(MatchDetailRecord[]::new));
         assertTrue(bd("12400.00").compareTo(engine.marketPrice) == 0);
     }
+    @Test
+    void processIocOrder(){
+        this.engine.processOrder(1, createOrder(Direction.SELL, "100.00", "0.50"));
+        OrderEntity taker = createOrder(Direction.BUY, "100.00", "1.00", TimeInForce.IOC);
+        MatchResult mr = this.engine.processOrder(taker.sequenceId, taker);
+        assertEquals(1, mr.matchDetails.size());
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, taker.status);
+        assertTrue(bd("0.50").compareTo(taker.unfilledQuantity) == 0);
+        // 未成交部分不进入订单簿:
+        assertFalse(this.engine.buyBook.exist(taker));
+        assertEquals(0, this.engine.sellBook.size());
+    }
+    @Test
+    void processFokOrder(){
+        OrderEntity maker1 = createOrder(Direction.SELL, "100.00", "0.50");
+        OrderEntity maker2 = createOrder(Direction.SELL, "101.00", "0.30");
+        this.engine.processOrder(maker1.sequenceId, maker1);
+        this.engine.processOrder(maker2.sequenceId, maker2);
+        // 价格范围内只有0.80, 整单取消且不修改任何Maker:
+        OrderEntity taker = createOrder(Direction.BUY, "101.00", "1.00", TimeInForce.FOK);
+        MatchResult mr = this.engine.processOrder(taker.sequenceId, taker);
+        assertTrue(mr.matchDetails.isEmpty());
+        assertEquals(OrderStatus.FULLY_CANCELLED, taker.status);
+        assertTrue(bd("0.50").compareTo(maker1.unfilledQuantity) == 0);
+        assertEquals(2, this.engine.sellBook.size());
+        // 可以全部成交:
+        taker = createOrder(Direction.BUY, "101.00", "0.80", TimeInForce.FOK);
+        mr = this.engine.processOrder(taker.sequenceId, taker);
+        assertEquals(2, mr.matchDetails.size());
+        assertEquals(OrderStatus.FULLY_FILLED, taker.status);
+        assertEquals(0, this.engine.sellBook.size());
+    }
+    @Test
+    void processPostOnlyOrder(){
+        this.engine.processOrder(1, createOrder(Direction.SELL, "100.00", "0.50"));
+        OrderEntity crossing = createOrder(Direction.BUY, "100.00", "1.00", TimeInForce.POST_ONLY);
+        assertTrue(this.engine.processOrder(crossing.sequenceId, crossing).matchDetails.isEmpty());
+        assertEquals(OrderStatus.FULLY_CANCELLED, crossing.status);
+        assertFalse(this.engine.buyBook.exist(crossing));
+        OrderEntity resting = createOrder(Direction.BUY, "99.99", "1.00", TimeInForce.POST_ONLY);
+        assertTrue(this.engine.processOrder(resting.sequenceId, resting).matchDetails.isEmpty());
+        assertEquals(OrderStatus.PENDING, resting.status);
+        assertTrue(this.engine.buyBook.exist(resting));
+    }
+    @Test
+    void processMarketOrder(){
+        this.engine.processOrder(1, createOrder(Direction.BUY, "100.00", "0.50"));
+        this.engine.processOrder(2, createOrder(Direction.BUY, "90.00", "0.50"));
+        OrderEntity taker = createOrder(Direction.SELL, "0.00", "2.00", TimeInForce.IOC);
+        taker.type = OrderType.MARKET;
+        MatchResult mr = this.engine.processOrder(taker.sequenceId, taker);
+        assertEquals(2, mr.matchDetails.size());
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, taker.status);
+        assertFalse(this.engine.sellBook.exist(taker));
+        assertTrue(bd("90.00").compareTo(this.engine.marketPrice) == 0);
+    }
+    @Test
+    void cancelOrdersInOneCall(){
+        OrderEntity buy = createOrder(Direction.BUY, "99.00", "1.00");
+        OrderEntity sell = createOrder(Direction.SELL, "101.00", "1.00");
+        OrderEntity notInBook = createOrder(Direction.SELL, "102.00", "1.00");
+        this.engine.processOrder(buy.sequenceId, buy);
+        this.engine.processOrder(sell.sequenceId, sell);
+        this.engine.processOrder(10, createOrder(Direction.BUY, "101.00", "0.40"));
+        // 任一订单不在订单簿中时不做任何修改:
+        assertThrows(IllegalArgumentException.class,
+                () -> this.engine.cancel(11, 1234567899999L, List.of(buy, sell, notInBook)));
+        assertTrue(this.engine.buyBook.exist(buy));
+        assertTrue(this.engine.sellBook.exist(sell));
+        assertEquals(10, this.engine.sequenceId);
+        this.engine.cancel(11, 1234567899999L, List.of(buy, sell));
+        assertEquals(0, this.engine.buyBook.size());
+        assertEquals(0, this.engine.sellBook.size());
+        assertEquals(11, this.engine.sequenceId);
+        assertEquals(OrderStatus.FULLY_CANCELLED, buy.status);
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, sell.status);
+        assertEquals(1234567899999L, sell.updatedAt);
+    }
+    OrderEntity createOrder(Direction direction, String price, String quantity, TimeInForce timeInForce){
+        OrderEntity order = createOrder(direction, price, quantity);
+        order.timeInForce = timeInForce;
+        return order;
+    }
     OrderEntity createOrder(Direction direction, String price, String quantity){
         this.sequenceId++;
         var order=new OrderEntity();
@@ -0,0 +1,194 @@
+package com.itranswarp.exchange.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventProcessorTest {
+    static class Entry {
+        long value;
+        long doubled;
+    }
+
+    @Test
+    void wrapAroundWithGatingSequences(){
+        // ring比事件少得多, 生产者必须多次回绕并等待最慢的下游阶段:
+        EventRing<Entry> ring=new EventRing<>(8,Entry::new);
+        AtomicReference<String> error=new AtomicReference<>();
+        EventProcessor<Entry> first=new EventProcessor<>("first",ring,(entry,seq,endOfBatch)->{
+            if(entry.value!=seq){
+                error.compareAndSet(null,"first: entry "+entry.value+" at sequence "+seq);
+            }
+            entry.doubled=entry.value*2;
+        });
+        AtomicLong sum=new AtomicLong();
+        EventProcessor<Entry> fast=new EventProcessor<>("fast",ring,(entry,seq,endOfBatch)->{
+            if(entry.value!=seq||entry.doubled!=seq*2){
+                error.compareAndSet(null,"fast: entry "+entry.value+" at sequence "+seq);
+            }
+            sum.addAndGet(entry.value);
+        },first.getSequence());
+        EventProcessor<Entry> slow=new EventProcessor<>("slow",ring,(entry,seq,endOfBatch)->{
+            if(seq%100==0){
+                Thread.sleep(1);
+            }
+            if(entry.value!=seq||entry.doubled!=seq*2){
+                error.compareAndSet(null,"slow: entry "+entry.value+" at sequence "+seq);
+            }
+        },first.getSequence());
+        ring.setGatingSequences(fast.getSequence(),slow.getSequence());
+        startAll(first,fast,slow);
+        try{
+            int n=10000;
+            for(int i=0;i<n;i++){
+                long seq=ring.next();
+                // 被覆盖的entry必须已被所有下游阶段处理:
+                if(seq-ring.size()>Math.min(fast.getSequence().get(),slow.getSequence().get())){
+                    error.compareAndSet(null,"producer overwrote unconsumed sequence "+(seq-ring.size()));
+                }
+                ring.get(seq).value=seq;
+                ring.publish(seq);
+            }
+            awaitSequence(fast.getSequence(),n-1);
+            awaitSequence(slow.getSequence(),n-1);
+            assertNull(error.get());
+            assertEquals((long) n*(n-1)/2,sum.get());
+        }finally{
+            haltAll(first,fast,slow);
+        }
+    }
+
+    @Test
+    void endOfBatchMarksLastAvailableEntry(){
+        EventRing<Entry> ring=new EventRing<>(16,Entry::new);
+        List<Long> ends=new ArrayList<>();
+        EventProcessor<Entry> stage=new EventProcessor<>("stage",ring,(entry,seq,endOfBatch)->{
+            if(endOfBatch){
+                synchronized (ends){
+                    ends.add(seq);
+                }
+            }
+        });
+        ring.setGatingSequences(stage.getSequence());
+        // 启动前发布的5个事件作为一批:
+        publish(ring,5);
+        stage.start();
+        try{
+            awaitSequence(stage.getSequence(),4);
+            publish(ring,3);
+            awaitSequence(stage.getSequence(),7);
+            synchronized (ends){
+                assertEquals(List.of(4L,7L),ends);
+            }
+        }finally{
+            stage.halt();
+        }
+    }
+
+    @Test
+    void downstreamNeverPassesUpstream(){
+        EventRing<Entry> ring=new EventRing<>(32,Entry::new);
+        EventProcessor<Entry> upstream=new EventProcessor<>("upstream",ring,(entry,seq,endOfBatch)->{
+            if(seq%50==0){
+                Thread.sleep(1);
+            }
+        });
+        AtomicReference<String> error=new AtomicReference<>();
+        EventProcessor<Entry> downstream=new EventProcessor<>("downstream",ring,(entry,seq,endOfBatch)->{
+            long upstreamSequence=upstream.getSequence().get();
+            if(upstreamSequence<seq){
+                error.compareAndSet(null,"sequence "+seq+" handled before upstream "+upstreamSequence);
+            }
+        },upstream.getSequence());
+        ring.setGatingSequences(downstream.getSequence());
+        startAll(upstream,downstream);
+        try{
+            publish(ring,2000);
+            awaitSequence(downstream.getSequence(),1999);
+            assertNull(error.get());
+        }finally{
+            haltAll(upstream,downstream);
+        }
+    }
+
+    @Test
+    void failureStopsStageWithoutAdvancing(){
+        EventRing<Entry> ring=new EventRing<>(16,Entry::new);
+        EventProcessor<Entry> upstream=new EventProcessor<>("upstream",ring,(entry,seq,endOfBatch)->{
+            if(seq==3){
+                throw new IllegalStateException("output failed");
+            }
+        });
+        AtomicLong handled=new AtomicLong(EventRing.INITIAL);
+        EventProcessor<Entry> downstream=new EventProcessor<>("downstream",ring,(entry,seq,endOfBatch)->{
+            handled.set(seq);
+        },upstream.getSequence());
+        AtomicLong failedAt=new AtomicLong(EventRing.INITIAL);
+        upstream.setFailureHandler((name,seq,e)->failedAt.set(seq));
+        ring.setGatingSequences(downstream.getSequence());
+        publish(ring,6);
+        startAll(upstream,downstream);
+        try{
+            awaitSequence(downstream.getSequence(),2);
+            awaitTrue(()->failedAt.get()==3);
+            assertFalse(upstream.running);
+            assertEquals(2L,upstream.getSequence().get());
+            // 下游阶段不能越过失败的事件:
+            sleep(50);
+            assertEquals(2L,downstream.getSequence().get());
+            assertEquals(2L,handled.get());
+        }finally{
+            haltAll(upstream,downstream);
+        }
+    }
+
+    static void publish(EventRing<Entry> ring, int n){
+        for(int i=0;i<n;i++){
+            long seq=ring.next();
+            ring.get(seq).value=seq;
+            ring.publish(seq);
+        }
+    }
+
+    @SafeVarargs
+    static void startAll(EventProcessor<Entry>... stages){
+        for(EventProcessor<Entry> stage:stages){
+            stage.start();
+        }
+    }
+
+    @SafeVarargs
+    static void haltAll(EventProcessor<Entry>... stages){
+        for(EventProcessor<Entry> stage:stages){
+            stage.halt();
+        }
+    }
+
+    static void awaitSequence(Sequence sequence, long value){
+        awaitTrue(()->sequence.get()>=value);
+    }
+
+    static void awaitTrue(java.util.function.BooleanSupplier condition){
+        long deadline=System.currentTimeMillis()+10000;
+        while(!condition.getAsBoolean()){
+            assertTrue(System.currentTimeMillis()<deadline,"timeout");
+            sleep(1);
+        }
+    }
+
+    static void sleep(long millis){
+        try{
+            Thread.sleep(millis);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.itranswarp.exchange.trigger;
+
+import com.itranswarp.exchange.bean.TriggerOrderBean;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.TimeInForce;
+import com.itranswarp.exchange.enums.TriggerType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TriggerServiceTest {
+    static final Long USER_A = 12345L;
+    static final Long USER_B = 23456L;
+    long sequenceId = 0;
+    TriggerService service;
+
+    @BeforeEach
+    void init() {
+        this.service = new TriggerService();
+    }
+
+    @Test
+    void pollAboveBookByTriggerPrice() {
+        // 买入止损和卖出止盈在价格上涨时触发:
+        TriggerOrderBean t1 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "102.00");
+        TriggerOrderBean t2 = createTrigger(USER_A, TriggerType.TAKE_PROFIT, Direction.SELL, "101.00");
+        TriggerOrderBean t3 = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.BUY, "103.00");
+        this.service.add(t1);
+        this.service.add(t2);
+        this.service.add(t3);
+        assertTrue(this.service.pollTriggered(bd("100.99")).isEmpty());
+        assertEquals(List.of(t2), this.service.pollTriggered(bd("101.00")));
+        // 同时触发的按sequenceId排序:
+        assertEquals(List.of(t1, t3), this.service.pollTriggered(bd("105.00")));
+        assertEquals(0, this.service.size());
+        assertTrue(this.service.aboveBook.isEmpty());
+    }
+
+    @Test
+    void pollBelowBookByTriggerPrice() {
+        // 卖出止损和买入止盈在价格下跌时触发:
+        TriggerOrderBean t1 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.SELL, "98.00");
+        TriggerOrderBean t2 = createTrigger(USER_A, TriggerType.TAKE_PROFIT, Direction.BUY, "99.00");
+        TriggerOrderBean t3 = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.SELL, "97.00");
+        this.service.add(t3);
+        this.service.add(t2);
+        this.service.add(t1);
+        assertTrue(this.service.pollTriggered(bd("99.01")).isEmpty());
+        assertEquals(List.of(t2), this.service.pollTriggered(bd("99.00")));
+        assertEquals(List.of(t1, t3), this.service.pollTriggered(bd("90.00")));
+        assertEquals(0, this.service.size());
+        assertTrue(this.service.belowBook.isEmpty());
+    }
+
+    @Test
+    void pollBothBooksInSequenceOrder() {
+        TriggerOrderBean below = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.SELL, "100.00");
+        TriggerOrderBean above = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.BUY, "100.00");
+        TriggerOrderBean notReached = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.BUY, "100.01");
+        this.service.add(notReached);
+        this.service.add(above);
+        this.service.add(below);
+        // 两个订单簿都触发时合并后仍按sequenceId排序:
+        assertEquals(List.of(below, above), this.service.pollTriggered(bd("100.00")));
+        assertEquals(1, this.service.size());
+        assertSame(notReached, this.service.get(notReached.id));
+    }
+
+    @Test
+    void sameTriggerPriceInCreationOrder() {
+        TriggerOrderBean t1 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "100.00");
+        TriggerOrderBean t2 = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.BUY, "100.00");
+        this.service.add(t2);
+        this.service.add(t1);
+        assertEquals(List.of(t1, t2), this.service.pollTriggered(bd("100.00")));
+    }
+
+    @Test
+    void limitTriggerOrdersPerUser() {
+        this.service.maxTriggerOrdersPerUser = 2;
+        this.service.add(createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "101.00"));
+        assertTrue(this.service.canCreateTriggerOrder(USER_A));
+        TriggerOrderBean t2 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.SELL, "99.00");
+        this.service.add(t2);
+        assertFalse(this.service.canCreateTriggerOrder(USER_A));
+        // 其他用户不受影响:
+        assertTrue(this.service.canCreateTriggerOrder(USER_B));
+        // 撤销或触发后释放名额:
+        this.service.remove(t2.id);
+        assertTrue(this.service.canCreateTriggerOrder(USER_A));
+        this.service.add(createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.SELL, "99.00"));
+        assertFalse(this.service.canCreateTriggerOrder(USER_A));
+        this.service.pollTriggered(bd("101.00"));
+        assertTrue(this.service.canCreateTriggerOrder(USER_A));
+        // 0表示不限制:
+        this.service.maxTriggerOrdersPerUser = 0;
+        for (int i = 0; i < 5; i++) {
+            this.service.add(createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.BUY, "200.00"));
+        }
+        assertTrue(this.service.canCreateTriggerOrder(USER_B));
+    }
+
+    @Test
+    void rejectDuplicateId() {
+        TriggerOrderBean t1 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "101.00");
+        this.service.add(t1);
+        TriggerOrderBean dup = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.SELL, "99.00");
+        dup.id = t1.id;
+        assertThrows(IllegalArgumentException.class, () -> this.service.add(dup));
+        assertEquals(1, this.service.size());
+        assertTrue(this.service.belowBook.isEmpty());
+        assertTrue(this.service.getUserTriggerOrders(USER_B).isEmpty());
+    }
+
+    @Test
+    void removeAndListUserTriggerOrders() {
+        TriggerOrderBean t1 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.BUY, "101.00");
+        TriggerOrderBean t2 = createTrigger(USER_A, TriggerType.STOP_LOSS, Direction.SELL, "99.00");
+        TriggerOrderBean t3 = createTrigger(USER_A, TriggerType.TAKE_PROFIT, Direction.SELL, "110.00");
+        TriggerOrderBean t4 = createTrigger(USER_B, TriggerType.STOP_LOSS, Direction.BUY, "101.00");
+        this.service.add(t1);
+        this.service.add(t2);
+        this.service.add(t3);
+        this.service.add(t4);
+        // 按创建顺序:
+        assertEquals(List.of(t1, t2, t3), this.service.getUserTriggerOrders(USER_A));
+        assertEquals(List.of(t4), this.service.getUserTriggerOrders(USER_B));
+
+        assertSame(t2, this.service.remove(t2.id));
+        assertNull(this.service.remove(t2.id));
+        assertNull(this.service.get(t2.id));
+        assertEquals(List.of(t1, t3), this.service.getUserTriggerOrders(USER_A));
+        // 从订单簿中删除, 不会再被触发:
+        assertTrue(this.service.pollTriggered(bd("99.00")).isEmpty());
+
+        // 返回的是副本:
+        List<TriggerOrderBean> list = this.service.getUserTriggerOrders(USER_A);
+        list.clear();
+        assertEquals(2, this.service.getUserTriggerOrders(USER_A).size());
+
+        assertEquals(List.of(t1, t4), this.service.pollTriggered(bd("101.00")));
+        assertEquals(List.of(t3), this.service.getUserTriggerOrders(USER_A));
+        assertTrue(this.service.getUserTriggerOrders(USER_B).isEmpty());
+        // 没有触发订单的用户不保留索引:
+        assertFalse(this.service.userTriggerOrders.containsKey(USER_B));
+        this.service.remove(t3.id);
+        assertTrue(this.service.userTriggerOrders.isEmpty());
+        assertEquals(0, this.service.size());
+    }
+
+    TriggerOrderBean createTrigger(Long userId, TriggerType triggerType, Direction direction, String triggerPrice) {
+        this.sequenceId++;
+        TriggerOrderBean trigger = new TriggerOrderBean();
+        trigger.id = this.sequenceId * 10000;
+        trigger.sequenceId = this.sequenceId;
+        trigger.userId = userId;
+        trigger.triggerType = triggerType;
+        trigger.triggerPrice = bd(triggerPrice);
+        trigger.direction = direction;
+        trigger.price = bd(triggerPrice);
+        trigger.quantity = bd("1");
+        trigger.type = OrderType.LIMIT;
+        trigger.timeInForce = TimeInForce.GTC;
+        trigger.status = OrderStatus.PENDING;
+        trigger.createdAt = 1234567890000L + this.sequenceId;
+        return trigger;
+    }
+
+    BigDecimal bd(String s) {
+        return new BigDecimal(s);
+    }
+}